@@ -0,0 +1,158 @@
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Admission decides, before anything is decoded, whether a datagram received
+ * by MuxDemuxSimple is worth handing to the handlers:
+ * - every source IP has a token bucket of `burst` datagrams, refilled at
+ *   `rate` datagrams per second: a chatty or broken host only loses its own
+ *   excess traffic instead of filling the queues of every handler (and
+ *   blocking the receive loop) at the expense of the whole segment;
+ * - our own broadcasts, echoed back to us, are discarded;
+ * - messages not starting with a known prefix are dropped.
+ * What is shed is counted in Metrics (rateLimitedDatagrams, echoedMessages,
+ * unknownMessages).
+ *
+ * Only used by the receive loop of MuxDemuxSimple, hence by a single thread.
+ */
+class Admission
+{
+    private final static byte[][] PREFIXES = {
+        "HELLO;".getBytes(), "SYN;".getBytes(), "LIST;".getBytes(),
+        "BOOT;".getBytes(), "SNAP;".getBytes(), 
+        "DIGEST;".getBytes(), "PULL;".getBytes()
+    };
+
+    /**
+     * Buckets are swept every SWEEP_INTERVAL ms: a full bucket is the same
+     * as no bucket, so that only the active sources are kept.
+     */
+    private final static long SWEEP_INTERVAL = 10000;
+
+    private final double rate;
+    private final double burst;
+    private final HashMap<InetAddress, Bucket> buckets =
+        new HashMap<InetAddress, Bucket>();
+    private long lastSweep = Clock.currentTimeMillis();
+
+    /**
+     * My ID as bytes, to recognize the echoes without decoding them.
+     */
+    private String myID      = null;
+    private byte[] myIDBytes = null;
+
+    private static class Bucket
+    {
+        double tokens;
+        long   lastRefill;
+    }
+
+    /**
+     * @param rate  datagrams per second per source, 0 for no limit.
+     * @param burst size of the buckets, in datagrams.
+     */
+    Admission(double rate, double burst)
+    {
+        this.rate  = rate;
+        this.burst = Math.max(burst, 1);
+    }
+
+    /**
+     * admit - takes a token from the bucket of source.
+     * @return false if the datagram must be dropped.
+     */
+    public boolean admit(InetAddress source)
+    {
+        if (this.rate <= 0)
+            return true;
+
+        long now = Clock.currentTimeMillis();
+        if (now - this.lastSweep > SWEEP_INTERVAL)
+            this.sweep(now);
+
+        Bucket bucket = this.buckets.get(source);
+        if (bucket == null)
+        {
+            bucket = new Bucket();
+            bucket.tokens     = this.burst;
+            bucket.lastRefill = now;
+            this.buckets.put(source, bucket);
+        }
+        else
+            this.refill(bucket, now);
+
+        if (bucket.tokens < 1)
+        {
+            Metrics.rateLimitedDatagrams.increment();
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+
+    private void refill(Bucket bucket, long now)
+    {
+        if (now <= bucket.lastRefill)
+            return;
+        bucket.tokens = Math.min(this.burst,
+            bucket.tokens + (now - bucket.lastRefill)*this.rate/1000);
+        bucket.lastRefill = now;
+    }
+
+    private void sweep(long now)
+    {
+        Iterator<Bucket> it = this.buckets.values().iterator();
+        while (it.hasNext())
+        {
+            Bucket bucket = it.next();
+            this.refill(bucket, now);
+            if (bucket.tokens >= this.burst)
+                it.remove();
+        }
+        this.lastSweep = now;
+    }
+
+    /**
+     * accept - checks the message data[offset, offset+length[ (a datagram,
+     * or a message of a MULTI datagram) before it is decoded into a String.
+     * @return false if it must be dropped (unknown prefix or our own echo).
+     */
+    public boolean accept(byte[] data, int offset, int length)
+    {
+        int start = -1;
+        for (byte[] prefix : PREFIXES)
+        {
+            if (length >= prefix.length && Arrays.equals(
+                    data, offset, offset + prefix.length,
+                    prefix, 0, prefix.length))
+            {
+                start = offset + prefix.length;
+                break;
+            }
+        }
+        if (start < 0)
+        {
+            Metrics.unknownMessages.increment();
+            return false;
+        }
+
+        // the senderID field
+        String id = Info.getMyID();
+        if (id != this.myID)
+        {
+            this.myID      = id;
+            this.myIDBytes = id.getBytes();
+        }
+        int end = start + this.myIDBytes.length;
+        if (end < offset + length && data[end] == ';' &&
+            Arrays.equals(data, start, end,
+                this.myIDBytes, 0, this.myIDBytes.length))
+        {
+            Metrics.echoedMessages.increment();
+            return false;
+        }
+        return true;
+    }
+}
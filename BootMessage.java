@@ -0,0 +1,113 @@
+/**
+ * A BootMessage is a string formatted as follows:
+ *      BOOT;senderID;peerID;
+ * 
+ * where:
+ *    - senderID is a string of up to 16 characters, containing the characters 
+ *      A-Z a-z 0-9 (only), and which represents the symbolic name of the 
+ *      sending machine, a node which just started.
+ *    - peerID is the senderID of the neighbour, to which this message is 
+ *      addressed, asked for a snapshot of all the replicas it holds (cf. 
+ *      SnapMessage and Bootstrap).
+ */
+
+public class BootMessage
+{
+    final private String senderID;
+    final private String peerID;
+    
+    /**
+     * Constructor1 -
+     *      takes a string formatted as above, and populates the attributes of 
+     *      the BootMessage object accordingly.
+     */
+    public BootMessage(String s)
+    {
+        String e;
+        
+        String[] tokens = s.split(";");
+        if (tokens.length < 3)
+        {
+            e = "wrong format";
+            throw new IllegalArgumentException(e);
+        }
+
+        if (!tokens[0].equals("BOOT"))
+        {
+            e = "should start with BOOT";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID = tokens[1];
+
+        if (!Tokenizer.isWord(this.senderID))
+        {
+            e = "should be a word (senderID=" + tokens[1] +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.peerID = tokens[2];
+    }
+
+    /**
+     * Constructor2 -
+     *      creates a BootMessage object
+     */
+    public BootMessage(String senderID, String peerID)
+    {
+        String e;
+        
+        if (!Tokenizer.isWord(senderID))
+        {
+            e = "should be a word (senderID=" + senderID +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID = senderID;
+        this.peerID   = peerID;
+    }
+
+    /** 
+     * getBootMessageAsEncodedString
+     * 
+     * @return  a string of the format indicated above, encoding the attributes 
+     *          of the BootMessage object, all ready to be sent out over the 
+     *          network.
+     */
+    public String getBootMessageAsEncodedString()
+    {
+        String res = "BOOT;";
+        res += this.senderID   + ";";
+        res += this.peerID     + ";";
+        return res;
+    }
+
+    /**
+     * toString -
+     *      provide a nice, human-readable, print-out of the object contents.
+     */
+    public String toString()
+    {
+        String res = this.getBootMessageAsEncodedString() + "\n\n";
+        res += "\tsenderID      = " + this.senderID      + "\n";
+        res += "\tpeerID        = " + this.peerID        + "\n";
+        return res;
+    }
+
+    /**
+     * The two following get methods are needed while receiving a BOOT.
+     */
+    public String getSenderID()
+    {
+        return this.senderID;
+    }
+
+    public String getPeerID()
+    {
+        return this.peerID;
+    }
+
+    /**
+     * No need to set - final attributes are assigned in the constructor.
+     */ 
+}
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Bulk bootstrap of a node which just started, instead of one SYN and one
+ * LIST transfer per peer of the segment:
+ * - While bootstrapping, the first neighbour heard with peers of its own is
+ *   sent a BOOT (another one if it doesn't answer within REQUEST_TIMEOUT).
+ * - A node receiving a BOOT addressed to it sends back, as SNAP messages,
+ *   its own database and every replica it is SYNCHRONIZED with, each tagged
+ *   with the origin peer and its sequence#.
+ * - The SNAPs are assembled per origin and offered to Info, which only
+ *   adopts a replica once a HELLO of the origin announces the same sequence#
+ *   (cf. Info.offerProvisional): HelloReceiver then has nothing to SYN. It
+ *   doesn't SYN anyone while bootstrapping (cf. Info.isBootstrapping).
+ * Bootstrapping ends when the snapshot stops arriving, or after
+ * BOOTSTRAP_WINDOW. Serving BOOTs is always enabled.
+ *
+ * BOOTs and SNAPs are processed by a single worker.
+ */
+class Bootstrap implements SimpleMessageHandler, Runnable
+{
+    private PartitionedWorkers<String> workers =
+        new PartitionedWorkers<>("Bootstrap.incoming", 1, this::process);
+    private MuxDemuxSimple myMuxDemux = null;
+
+    private final static long REQUEST_TIMEOUT  = 3000;
+    private final static long BOOTSTRAP_WINDOW = 60000;
+
+    /**
+     * Whether we are bootstrapping, since when, from which neighbour (null if
+     * not asked yet) and when its last SNAP part arrived.
+     * Only accessed by the worker (active is also read by the receive loop).
+     */
+    private volatile boolean active      = false;
+    private long             startTime   = 0;
+    private String           requestedTo = null;
+    private long             requestedAt = 0;
+    private long             lastPart    = 0;
+
+    /**
+     * The SNAPs of the snapshot being received.
+     */
+    private SnapTransfer snaps = new SnapTransfer();
+
+    /**
+     * Dictionnary associating peerID to the thread sending it a snapshot.
+     * While the corresponding thread is still processing, we will ignore
+     * other BOOT messages of the peer.
+     */
+    private HashMap<String, Thread> myThreads = new HashMap<>();
+
+    public void setMuxDemux(MuxDemuxSimple md)
+    {
+        myMuxDemux = md;
+    }
+
+    /**
+     * setActive - whether to bootstrap, must be called before run().
+     */
+    public void setActive(boolean active)
+    {
+        this.active    = active;
+        this.startTime = Clock.currentTimeMillis();
+        Info.setBootstrapping(active);
+    }
+
+    private boolean accepts(String recved)
+    {
+        return recved.startsWith("BOOT;") || recved.startsWith("SNAP;") ||
+            (this.active && recved.startsWith("HELLO;"));
+    }
+
+    public void handleMessage(String recved, String source)
+    {
+        if (!this.accepts(recved))
+            return;
+
+        try
+        {
+            workers.dispatch(PartitionedWorkers.senderOf(recved), recved);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+
+    public void handleBatch(List<String> recved, List<String> senderIPs)
+    {
+        ArrayList<String> senderIDs = new ArrayList<String>();
+        ArrayList<String> msgs      = new ArrayList<String>();
+        for (String msg : recved)
+        {
+            if (!this.accepts(msg))
+                continue;
+            senderIDs.add(PartitionedWorkers.senderOf(msg));
+            msgs.add(msg);
+        }
+        if (msgs.isEmpty())
+            return;
+
+        try
+        {
+            workers.dispatchAll(senderIDs, msgs);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+
+    /**
+     * handleHellos - only while bootstrapping, the HELLOs are then decoded 
+     * into Strings (the views aren't parsed yet, cf. HelloView).
+     */
+    public void handleHellos(List<HelloView> hellos)
+    {
+        if (!this.active)
+            return;
+
+        ArrayList<String> senderIDs = new ArrayList<String>();
+        ArrayList<String> msgs      = new ArrayList<String>();
+        for (HelloView hv : hellos)
+        {
+            String msg = hv.getHelloMessageAsEncodedString();
+            senderIDs.add(PartitionedWorkers.senderOf(msg));
+            msgs.add(msg);
+        }
+
+        try
+        {
+            workers.dispatchAll(senderIDs, msgs);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+
+    public void run()
+    {
+        workers.run();
+    }
+
+    private void process(int partition, List<String> batch)
+    {
+        for (String msg : batch)
+        {
+            Flight.MessageDecoded decoding = Flight.decoding();
+            try
+            {
+                if (msg.startsWith("HELLO;"))
+                {
+                    HelloMessage hm = new HelloMessage(msg);
+                    Flight.decoded(decoding, msg, true);
+                    this.processHello(hm);
+                }
+                else if (msg.startsWith("BOOT;"))
+                {
+                    BootMessage bm = new BootMessage(msg);
+                    Flight.decoded(decoding, msg, true);
+                    this.processBoot(bm);
+                }
+                else
+                {
+                    SnapMessage sm = new SnapMessage(msg);
+                    Flight.decoded(decoding, msg, true);
+                    this.processSnap(sm);
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // malformed
+                Flight.decoded(decoding, msg, false);
+                continue;
+            }
+            catch (RuntimeException e)
+            {
+                workers.failed(partition, e);
+            }
+        }
+    }
+
+    private void processHello(HelloMessage hm)
+    {
+        if (!this.active)
+            return;
+
+        long now = Clock.currentTimeMillis();
+        if (now - this.startTime > BOOTSTRAP_WINDOW ||
+            (this.lastPart != 0 && now - this.lastPart > REQUEST_TIMEOUT))
+        {
+            // the snapshot is over (or nobody answered)
+            this.active = false;
+            Info.setBootstrapping(false);
+            this.snaps.clear();
+            return;
+        }
+
+        String peerID = hm.getSenderID();
+        if (peerID.equals(Info.getMyID()) || hm.getNumPeers() == 0)
+            return;
+        if (this.requestedTo != null &&
+            (this.lastPart != 0 || now - this.requestedAt < REQUEST_TIMEOUT))
+            return;
+
+        BootMessage bm = new BootMessage(Info.getMyID(), peerID);
+        myMuxDemux.send(bm.getBootMessageAsEncodedString());
+        Metrics.bootRequests.increment();
+        this.requestedTo = peerID;
+        this.requestedAt = now;
+    }
+
+    private void processBoot(BootMessage bm)
+    {
+        String senderID = bm.getSenderID();
+        if (!bm.getPeerID().equals(Info.getMyID()))
+            return;
+
+        Thread t = this.myThreads.get(senderID);
+        if (t != null && t.isAlive())
+            return;
+
+        // send the SNAP messages containing the snapshot
+        Thread sendSnapThread = new Thread(() ->
+        {
+            for (Database db : Info.getSnapshot())
+                SnapTransfer.send(myMuxDemux, senderID, db);
+        });
+        this.myThreads.put(senderID, sendSnapThread);
+        sendSnapThread.start();
+    }
+
+    private void processSnap(SnapMessage sm)
+    {
+        if (!this.active || !sm.getPeerID().equals(Info.getMyID()) ||
+            !sm.getSenderID().equals(this.requestedTo))
+            return;
+
+        this.lastPart = Clock.currentTimeMillis();
+        this.snaps.add(sm);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * The "static" class Clock is the time of the protocol: expiration times, 
+ * HELLO and SYN periods, etc. all rely on it instead of System/Thread.
+ *
+ * By default it is the wall clock. The simulator of bench/ switches it to a
+ * virtual time running `speedup` times faster than the wall clock, shared by
+ * every simulated node, so that a large segment can be observed for minutes
+ * of protocol time in a few seconds.
+ */
+public class Clock
+{
+    private static volatile boolean virtual = false;
+    private static long   originMillis;
+    private static long   originNanos;
+    private static double speedup;
+
+    /**
+     * private constructor because it makes no sense to instantiate this class.
+     */
+    private Clock(){};
+
+    /**
+     * setVirtual - 
+     * @param originMillis the virtual time at the instant originNanos (as 
+     *                     given by System.nanoTime()).
+     * @param speedup      how much faster than the wall clock time goes.
+     */
+    public static void setVirtual(long originMillis, long originNanos, 
+                                    double speedup)
+    {
+        Clock.originMillis = originMillis;
+        Clock.originNanos  = originNanos;
+        Clock.speedup      = speedup;
+        Clock.virtual      = true;
+    }
+
+    public static long currentTimeMillis()
+    {
+        if (!virtual)
+            return System.currentTimeMillis();
+        return originMillis + 
+            (long) ((System.nanoTime() - originNanos)*speedup/1000000);
+    }
+
+    public static void sleep(long millis) throws InterruptedException
+    {
+        if (!virtual)
+            Thread.sleep(millis);
+        else
+            Thread.sleep(Math.max(1, (long) (millis/speedup)));
+    }
+}
\ No newline at end of file
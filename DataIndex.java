@@ -0,0 +1,219 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * DataIndex is an inverted index over the union of all the databases we know:
+ * my own database and every replica stored in a PeerRecord of our PeerTable.
+ *
+ * Every entry maps a data string to the peers holding it (with the number of
+ * occurrences in each peer's database), so that exact-match and prefix
+ * lookups don't have to scan the String[] of every peer.
+ *
+ * The index is maintained incrementally by Info: whenever a database is
+ * replaced (Info.updateMyDatabase, or Info.commitPeerDatabase once
+ * ListReceiver has received all the LIST parts), only the strings that
+ * appeared or disappeared are touched.
+ */
+public class DataIndex
+{
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * data string -> (peerID -> number of occurrences in the peer's data).
+     * A TreeMap so that prefix lookups are a simple subMap.
+     */
+    private final TreeMap<String, HashMap<String, Integer>> entries =
+        new TreeMap<String, HashMap<String, Integer>>();
+
+    /**
+     * peerID -> the data array currently indexed for this peer. Database
+     * never modifies an array in place (updateDatabase replaces it), so
+     * keeping the reference is enough to compute the next difference.
+     */
+    private final HashMap<String, String[]> indexed =
+        new HashMap<String, String[]>();
+
+    /**
+     * update - replaces the indexed data of peerID by newData.
+     */
+    public void update(String peerID, String[] newData)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            String[] oldData = this.indexed.get(peerID);
+            if (oldData == newData)
+                return;
+
+            HashMap<String, Integer> delta = new HashMap<String, Integer>();
+            if (oldData != null)
+            {
+                for (String s : oldData)
+                    delta.merge(s, -1, Integer::sum);
+            }
+            for (String s : newData)
+                delta.merge(s, 1, Integer::sum);
+
+            for (Map.Entry<String, Integer> d : delta.entrySet())
+            {
+                if (d.getValue() != 0)
+                    this.apply(d.getKey(), peerID, d.getValue());
+            }
+            this.indexed.put(peerID, newData);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * remove - forgets everything indexed for peerID (e.g. peer expired).
+     */
+    public void remove(String peerID)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            String[] oldData = this.indexed.remove(peerID);
+            if (oldData == null)
+                return;
+
+            for (String s : oldData)
+                this.apply(s, peerID, -1);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called with the write lock held.
+     */
+    private void apply(String value, String peerID, int delta)
+    {
+        HashMap<String, Integer> holders = this.entries.get(value);
+        if (holders == null)
+        {
+            if (delta <= 0)
+                return;
+            holders = new HashMap<String, Integer>();
+            this.entries.put(value, holders);
+        }
+
+        int count = holders.getOrDefault(peerID, 0) + delta;
+        if (count > 0)
+            holders.put(peerID, count);
+        else
+            holders.remove(peerID);
+
+        if (holders.isEmpty())
+            this.entries.remove(value);
+    }
+
+    /**
+     * find - exact-match lookup.
+     * @return the IDs of the peers (possibly including mine) holding value.
+     */
+    public Set<String> find(String value)
+    {
+        return this.find(value, null);
+    }
+
+    /**
+     * find - exact-match lookup restricted to the given peers.
+     * @param peerIDs the peers we are interested in, null for all of them.
+     */
+    public Set<String> find(String value, Set<String> peerIDs)
+    {
+        lock.readLock().lock();
+        try
+        {
+            HashMap<String, Integer> holders = this.entries.get(value);
+            if (holders == null)
+                return Collections.emptySet();
+            return filter(holders.keySet(), peerIDs);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * contains - whether the database of peerID holds value.
+     */
+    public boolean contains(String peerID, String value)
+    {
+        lock.readLock().lock();
+        try
+        {
+            HashMap<String, Integer> holders = this.entries.get(value);
+            return holders != null && holders.containsKey(peerID);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * findByPrefix - prefix lookup.
+     * @return the matching data strings (sorted) with the peers holding them.
+     */
+    public SortedMap<String, Set<String>> findByPrefix(String prefix)
+    {
+        return this.findByPrefix(prefix, null);
+    }
+
+    /**
+     * findByPrefix - prefix lookup restricted to the given peers.
+     * @param peerIDs the peers we are interested in, null for all of them.
+     */
+    public SortedMap<String, Set<String>> findByPrefix(String prefix,
+                                                        Set<String> peerIDs)
+    {
+        TreeMap<String, Set<String>> res = new TreeMap<String, Set<String>>();
+
+        lock.readLock().lock();
+        try
+        {
+            SortedMap<String, HashMap<String, Integer>> range =
+                this.entries.tailMap(prefix);
+
+            for (Map.Entry<String, HashMap<String, Integer>> e :
+                    range.entrySet())
+            {
+                if (!e.getKey().startsWith(prefix))
+                    break;
+
+                Set<String> peers = filter(e.getValue().keySet(), peerIDs);
+                if (!peers.isEmpty())
+                    res.put(e.getKey(), peers);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        return res;
+    }
+
+    private static Set<String> filter(Set<String> holders, Set<String> peerIDs)
+    {
+        HashSet<String> res = new HashSet<String>();
+        for (String peerID : holders)
+        {
+            if (peerIDs == null || peerIDs.contains(peerID))
+                res.add(peerID);
+        }
+        return res;
+    }
+}
@@ -3,14 +3,29 @@
  * indicating its version. This will be instanciated for my own machine and
  * all the peers in my PeerTable.
  * The database will then be a part of the class "Info" as well as "PeerRecord".
+ * It is tagged with the ID of its origin, the peer which wrote it: replicas 
+ * may be relayed by other peers (cf. Bootstrap, Gossip).
  */
 public class Database
 {
-    public Database()
+    public Database(String originID)
     {
+        this.originID = originID;
         this.data = new String[0];
         this.sequenceNo = -1;
     }
+
+    public Database(String originID, String[] data, int sequenceNo)
+    {
+        this.originID = originID;
+        this.data = data;
+        this.sequenceNo = sequenceNo;
+    }
+
+    /**
+     * originID is the ID of the peer this database belongs to.
+     */
+    private final String originID;
     
     /**
      * data is a table of strings where each string contains [0;255] characters.
@@ -22,6 +37,11 @@ public class Database
      */
     private int sequenceNo;
 
+    public String getOriginID()
+    {
+        return this.originID;
+    }
+
     public int getDatabaseSequenceNo()
     {
         return this.sequenceNo;
@@ -0,0 +1,156 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A DigestMessage is a string formatted as follows:
+ *      DIGEST;senderID;NumOrigins;origin1;sequence#1;...;originN;sequence#N;
+ * 
+ * where:
+ *    - senderID is a string of up to 16 characters, containing the characters 
+ *      A-Z a-z 0-9 (only), and which represents the symbolic name of the 
+ *      sending machine.
+ *    - NumOrigins is an integer [0;MAX_ORIGINS] which indicates the number of
+ *      (origin, sequence#) pairs following.
+ *    - origin? is the senderID of a peer whose database the sender holds, at
+ *      version sequence#? (the sender's own database included), and can 
+ *      relay to anyone asking for it (cf. PullMessage, Gossip).
+ */
+
+public class DigestMessage
+{
+    /**
+     * A digest must fit in a datagram: larger summaries are split.
+     */
+    public final static int MAX_ORIGINS = 64;
+
+    final private String senderID;
+    final private LinkedHashMap<String, Integer> origins = 
+        new LinkedHashMap<String, Integer>();
+    
+    /**
+     * Constructor1 -
+     *      takes a string formatted as above, and populates the attributes of 
+     *      the DigestMessage object accordingly.
+     */
+    public DigestMessage(String s)
+    {
+        String e;
+        
+        String[] tokens = s.split(";");
+        if (tokens.length < 3)
+        {
+            e = "wrong format";
+            throw new IllegalArgumentException(e);
+        }
+
+        if (!tokens[0].equals("DIGEST"))
+        {
+            e = "should start with DIGEST";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID = tokens[1];
+
+        if (!Tokenizer.isWord(this.senderID))
+        {
+            e = "should be a word (senderID=" + tokens[1] +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        int numOrigins;
+        try
+        {
+            numOrigins = Integer.parseInt(tokens[2]);
+            if (numOrigins < 0 || numOrigins > MAX_ORIGINS || 
+                tokens.length < 3 + 2*numOrigins)
+            {
+                e = "wrong number of origins (NumOrigins=" + tokens[2] + ")";
+                throw new IllegalArgumentException(e);
+            }
+
+            for (int i=0; i<numOrigins; i++)
+                this.origins.put(tokens[3 + 2*i], 
+                    Integer.parseInt(tokens[4 + 2*i]));
+        }
+        catch (NumberFormatException ne)
+        {
+            throw new IllegalArgumentException(ne);
+        }
+    }
+
+    /**
+     * Constructor2 -
+     *      creates a DigestMessage object summarizing the given versions, 
+     *      originID -> sequence# (at most MAX_ORIGINS, cf. Info.getVersions).
+     */
+    public DigestMessage(String senderID, Map<String, Integer> versions)
+    {
+        String e;
+        
+        if (!Tokenizer.isWord(senderID))
+        {
+            e = "should be a word (senderID=" + senderID +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        if (versions.size() > MAX_ORIGINS)
+        {
+            e = "too many origins (>" + MAX_ORIGINS + ")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID = senderID;
+        this.origins.putAll(versions);
+    }
+
+    /** 
+     * getDigestMessageAsEncodedString
+     * 
+     * @return  a string of the format indicated above, encoding the attributes 
+     *          of the DigestMessage object, all ready to be sent out over the 
+     *          network.
+     */
+    public String getDigestMessageAsEncodedString()
+    {
+        StringBuilder res = new StringBuilder("DIGEST;");
+        res.append(this.senderID).append(';');
+        res.append(this.origins.size()).append(';');
+        for (Map.Entry<String, Integer> origin : this.origins.entrySet())
+            res.append(origin.getKey()).append(';')
+               .append(origin.getValue()).append(';');
+        return res.toString();
+    }
+
+    /**
+     * toString -
+     *      provide a nice, human-readable, print-out of the object contents.
+     */
+    public String toString()
+    {
+        String res = this.getDigestMessageAsEncodedString() + "\n\n";
+        res += "\tsenderID      = " + this.senderID       + "\n";
+        res += "\torigins       = " + this.origins        + "\n";
+        return res;
+    }
+
+    /**
+     * The three following get methods are needed while receiving a DIGEST.
+     */
+    public String getSenderID()
+    {
+        return this.senderID;
+    }
+
+    public int getNumOrigins()
+    {
+        return this.origins.size();
+    }
+
+    /**
+     * getOrigins - origin -> sequence#, in the order of the message.
+     */
+    public Map<String, Integer> getOrigins()
+    {
+        return this.origins;
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * EventDispatcher delivers PeerEvents to the subscribed PeerListeners from its
+ * own thread.
+ *
+ * Protocol threads only offer() events to a bounded SynchronizedQueue: if a
+ * slow listener lets the queue fill up, the new events are dropped (and 
+ * counted in Metrics) instead of blocking HelloReceiver, ListReceiver, etc.
+ */
+public class EventDispatcher implements Runnable
+{
+    private final static String TAG = "EventDispatch - ";
+
+    private final SynchronizedQueue<PeerEvent> events;
+    private final CopyOnWriteArrayList<PeerListener> listeners = 
+        new CopyOnWriteArrayList<PeerListener>();
+
+    private Thread dispatcherThread = null;
+
+    public EventDispatcher(int capacity)
+    {
+        this.events = new SynchronizedQueue<>(capacity, 
+            "EventDispatcher.events");
+    }
+
+    /**
+     * subscribe - the dispatcher thread is only started with the first 
+     * listener, so that nothing is queued as long as nobody listens.
+     */
+    public synchronized void subscribe(PeerListener listener)
+    {
+        this.listeners.add(listener);
+        if (this.dispatcherThread == null)
+        {
+            this.dispatcherThread = new Thread(this, "EventDispatcher");
+            this.dispatcherThread.setDaemon(true);
+            this.dispatcherThread.start();
+        }
+    }
+
+    public void unsubscribe(PeerListener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    public boolean hasListeners()
+    {
+        return !this.listeners.isEmpty();
+    }
+
+    /**
+     * publish - never blocks, called from the protocol threads.
+     */
+    public void publish(PeerEvent event)
+    {
+        if (!this.hasListeners())
+            return;
+
+        if (!this.events.offer(event))
+        {
+            Metrics.eventsDropped.increment();
+            Trace.log(Trace.Event.EVENT_DROPPED, event.getType().ordinal(),
+                Trace.symbol(event.getPeerID()));
+        }
+    }
+
+    public void run()
+    {
+        while (!Thread.interrupted())
+        {
+            PeerEvent event;
+            try
+            {
+                event = this.events.dequeue();
+            }
+            catch (InterruptedException e)
+            {
+                System.err.println(e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            for (PeerListener listener : this.listeners)
+            {
+                try
+                {
+                    listener.onPeerEvent(event);
+                }
+                catch (RuntimeException e)
+                {
+                    // a faulty listener must not kill the dispatcher
+                    System.err.println(TAG + e);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
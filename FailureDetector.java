@@ -0,0 +1,221 @@
+/**
+ * A FailureDetector estimates how likely it is that a peer is gone, from the
+ * arrival times of its HELLOs (the phi accrual failure detector of Hayashibara
+ * et al.): the intervals between the last WINDOW HELLOs are assumed normally
+ * distributed, and the suspicion level phi after a silence of t ms is
+ *      phi(t) = -log10(P(interval > t))
+ * i.e. phi = 1 means a 10% chance that the HELLO is only late, phi = 2 a 1%
+ * chance, etc. The peer is expired once phi exceeds the threshold (cf.
+ * Info.setPhiThreshold). A peer sending its HELLOs regularly is thus never
+ * expired, however long it has been known, and a silent one is expired after
+ * a few of its usual intervals rather than after a fixed time.
+ *
+ * Until SEEDED real intervals are known, two seed intervals derived from
+ * the HelloInterval the peer announces (the longest time between two of its
+ * HELLOs) are added to them, then dropped: they would otherwise dwarf the
+ * actual period of the peer's HELLOs for the whole WINDOW. Whatever phi, a 
+ * peer silent for longer than its HelloInterval (plus ACCEPTABLE_PAUSE) is
+ * expired, as the protocol specifies (cf. HelloMessage). Lost
+ * HELLOs show up as longer intervals, so the detector becomes more tolerant
+ * on a lossy link. Every silence is allowed ACCEPTABLE_PAUSE ms on top of the
+ * mean interval, and the standard deviation is at least MIN_STD_DEV ms, so
+ * that a peer whose HELLOs arrive like clockwork isn't expired after a single
+ * lost one.
+ */
+class FailureDetector
+{
+    private final static int    WINDOW           = 100;
+    private final static int    SEEDED           = 4;
+    private final static double MIN_STD_DEV      = 500;
+    private final static long   ACCEPTABLE_PAUSE = 3000;
+
+    public final static double DEFAULT_THRESHOLD = 8;
+
+    /**
+     * The threshold of phi, and how many standard deviations beyond the mean
+     * (plus ACCEPTABLE_PAUSE) it is reached at.
+     */
+    private static volatile double threshold  = DEFAULT_THRESHOLD;
+    private static volatile double deviations = deviationsOf(DEFAULT_THRESHOLD);
+
+    /**
+     * The last intervals (ms), in a ring buffer, with their sum and sum of
+     * squares. Like the whole FailureDetector, guarded by Info.lock (its 
+     * updates and phi are only called by Info).
+     */
+    private final long[] intervals = new long[WINDOW];
+    private int    count = 0;
+    private int    next  = 0;
+    private double sum   = 0;
+    private double sumOfSquares = 0;
+
+    /**
+     * The seed intervals, until SEEDED intervals were added (then 0).
+     */
+    private int    seeds = 0;
+    private double seedSum = 0;
+    private double seedSumOfSquares = 0;
+
+    private long lastHeartbeat;
+    private long helloInterval;
+
+    /**
+     * When phi will exceed the threshold, updated by every heartbeat: read
+     * without lock (cf. getExpirationTime).
+     */
+    private volatile long expirationTime;
+
+    /**
+     * @param helloInterval the HelloInterval (s) announced by the peer.
+     * @param now           when its first HELLO was received.
+     */
+    FailureDetector(int helloInterval, long now)
+    {
+        long interval = ((long) helloInterval)*1000;
+        // a mean of helloInterval, with a deviation of a quarter of it
+        this.seed(interval - interval/4);
+        this.seed(interval + interval/4);
+        this.lastHeartbeat = now;
+        this.helloInterval = interval;
+        this.expirationTime = this.expirationTime();
+    }
+
+    /**
+     * setThreshold - cf. Info.setPhiThreshold.
+     */
+    static void setThreshold(double phi)
+    {
+        if (!(phi > 0))
+            throw new IllegalArgumentException("phi threshold: " + phi);
+        deviations = deviationsOf(phi);
+        threshold  = phi;
+    }
+
+    static double getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * heartbeat - a HELLO of the peer, announcing helloInterval (s), was
+     * received at now.
+     */
+    void heartbeat(int helloInterval, long now)
+    {
+        long interval = ((long) helloInterval)*1000;
+        // e.g. the same HELLO received through several paths
+        if (now <= this.lastHeartbeat && interval == this.helloInterval)
+            return;
+
+        if (now > this.lastHeartbeat)
+        {
+            this.add(now - this.lastHeartbeat);
+            this.lastHeartbeat = now;
+        }
+        this.helloInterval  = interval;
+        this.expirationTime = this.expirationTime();
+    }
+
+    private void seed(long interval)
+    {
+        this.seeds++;
+        this.seedSum          += interval;
+        this.seedSumOfSquares += ((double) interval)*interval;
+    }
+
+    private void add(long interval)
+    {
+        if (this.count == WINDOW)
+        {
+            long oldest = this.intervals[this.next];
+            this.sum          -= oldest;
+            this.sumOfSquares -= ((double) oldest)*oldest;
+        }
+        else
+            this.count++;
+
+        this.intervals[this.next] = interval;
+        this.next = (this.next + 1) % WINDOW;
+        this.sum          += interval;
+        this.sumOfSquares += ((double) interval)*interval;
+
+        if (this.count == SEEDED)
+        {
+            this.seeds = 0;
+            this.seedSum = 0;
+            this.seedSumOfSquares = 0;
+        }
+    }
+
+    private double mean()
+    {
+        return (this.sum + this.seedSum)/(this.count + this.seeds);
+    }
+
+    private double stdDev()
+    {
+        double mean = this.mean();
+        double variance = (this.sumOfSquares + this.seedSumOfSquares)/
+            (this.count + this.seeds) - mean*mean;
+        return Math.max(MIN_STD_DEV, Math.sqrt(Math.max(0, variance)));
+    }
+
+    /**
+     * phi - the suspicion level at now.
+     */
+    double phi(long now)
+    {
+        if (now > this.lastHeartbeat + this.helloInterval + ACCEPTABLE_PAUSE)
+            return Double.POSITIVE_INFINITY;
+
+        double y = (now - this.lastHeartbeat - this.mean() -
+            ACCEPTABLE_PAUSE)/this.stdDev();
+        return phiOf(y);
+    }
+
+    /**
+     * getExpirationTime - when phi will exceed the threshold if no HELLO
+     * arrives meanwhile.
+     */
+    long getExpirationTime()
+    {
+        return this.expirationTime;
+    }
+
+    private long expirationTime()
+    {
+        return this.lastHeartbeat + ACCEPTABLE_PAUSE + Math.min(
+            this.helloInterval, 
+            (long) (this.mean() + deviations*this.stdDev()));
+    }
+
+    /**
+     * phiOf - phi after a silence y standard deviations beyond the mean, with
+     * the logistic approximation of the normal distribution.
+     */
+    private static double phiOf(double y)
+    {
+        double e = Math.exp(-y*(1.5976 + 0.070566*y*y));
+        if (y > 0)
+            return -Math.log10(e/(1 + e));
+        return -Math.log10(1 - 1/(1 + e));
+    }
+
+    /**
+     * deviationsOf - inverse of phiOf (which is increasing), by bisection.
+     */
+    private static double deviationsOf(double phi)
+    {
+        double low  = -10;
+        double high = 40;
+        for (int i=0; i<64; i++)
+        {
+            double y = (low + high)/2;
+            if (phiOf(y) < phi)
+                low = y;
+            else
+                high = y;
+        }
+        return high;
+    }
+}
@@ -0,0 +1,298 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The "static" class Flight declares the Java Flight Recorder events of the
+ * protocol, to profile a running node (e.g. with
+ * -XX:StartFlightRecording or jcmd JFR.start) without going through Trace:
+ * - DatagramReceived and BatchDispatched, by the receive loop of
+ *   MuxDemuxSimple,
+ * - MessageDecoded, for every message parsed by a handler,
+ * - PeerStateChanged, for every transition of a PeerRecord (whether
+ *   triggered by a HELLO in Info.updatePeerTable or by ListReceiver),
+ * - SynSent, for every SYN (full or range) we send,
+ * - ListTransfer, from the first LIST part of a version of a peer's database
+ *   to its commit (or until it is abandoned for another version).
+ * Every event carries the nodeID of the node recording it, and those about
+ * a peer its peerID and the sequence# concerned, so that the timeline of the
+ * synchronization with a peer can be rebuilt from a recording (also across
+ * the nodes of the Simulator, which share a JVM).
+ *
+ * When JFR is not recording, the events are neither filled in nor
+ * committed: the sites only check isEnabled/shouldCommit. The timed events
+ * of the hot paths (MessageDecoded, BatchDispatched) aren't even allocated
+ * nor begun then: decoding and dispatching return null, after checking the
+ * EventType cached below (cf. flight.decoding in bench/CodecBench).
+ */
+class Flight
+{
+    private final static String CATEGORY = "Peer Synchronization";
+
+    private Flight(){};
+
+    private final static EventType BATCH_DISPATCHED = 
+        EventType.getEventType(BatchDispatched.class);
+    private final static EventType MESSAGE_DECODED = 
+        EventType.getEventType(MessageDecoded.class);
+
+    @Name("peersync.DatagramReceived")
+    @Label("Datagram Received")
+    @Category({CATEGORY, "Datagram"})
+    @StackTrace(false)
+    static class DatagramReceived extends Event
+    {
+        @Label("Node")
+        String nodeID;
+
+        @Label("Source")
+        String sourceIP;
+
+        @Label("Length")
+        @DataAmount
+        int length;
+
+        @Label("MULTI")
+        @Description("Whether it packs several messages")
+        boolean multi;
+    }
+
+    @Name("peersync.BatchDispatched")
+    @Label("Batch Dispatched")
+    @Category({CATEGORY, "Datagram"})
+    @Description("Handing a batch of received messages to the handlers")
+    @StackTrace(false)
+    static class BatchDispatched extends Event
+    {
+        @Label("Node")
+        String nodeID;
+
+        @Label("HELLOs")
+        int hellos;
+
+        @Label("Other Messages")
+        int messages;
+    }
+
+    @Name("peersync.MessageDecoded")
+    @Label("Message Decoded")
+    @Category({CATEGORY, "Message"})
+    @StackTrace(false)
+    static class MessageDecoded extends Event
+    {
+        @Label("Node")
+        String nodeID;
+
+        @Label("Type")
+        String type;
+
+        @Label("Sender")
+        String senderID;
+
+        @Label("Length")
+        @DataAmount
+        int length;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("peersync.PeerStateChanged")
+    @Label("Peer State Changed")
+    @Category({CATEGORY, "Peer"})
+    static class PeerStateChanged extends Event
+    {
+        @Label("Node")
+        String nodeID;
+
+        @Label("Peer")
+        String peerID;
+
+        @Label("From")
+        String oldState;
+
+        @Label("To")
+        String newState;
+
+        @Label("Sequence#")
+        @Description("Of our replica of the peer's database")
+        int sequenceNo;
+
+        @Label("Advertised Sequence#")
+        @Description("In the last HELLO of the peer")
+        int advertisedSequenceNo;
+    }
+
+    @Name("peersync.SynSent")
+    @Label("SYN Sent")
+    @Category({CATEGORY, "Peer"})
+    @StackTrace(false)
+    static class SynSent extends Event
+    {
+        @Label("Node")
+        String nodeID;
+
+        @Label("Peer")
+        String peerID;
+
+        @Label("Sequence#")
+        int sequenceNo;
+
+        @Label("Retry")
+        boolean retry;
+
+        @Label("First Part")
+        @Description("Range SYNs only (cf. LazyReplica), else 0")
+        int firstPart;
+
+        @Label("Part Count")
+        @Description("Range SYNs only (cf. LazyReplica), else 0")
+        int partCount;
+    }
+
+    @Name("peersync.ListTransfer")
+    @Label("LIST Transfer")
+    @Category({CATEGORY, "Peer"})
+    @Description("From the first LIST part of a version to its commit")
+    @StackTrace(false)
+    static class ListTransfer extends Event
+    {
+        @Label("Node")
+        String nodeID;
+
+        @Label("Peer")
+        String peerID;
+
+        @Label("Sequence#")
+        int sequenceNo;
+
+        @Label("Total Parts")
+        int totalParts;
+
+        @Label("Parts Received")
+        int partsReceived;
+
+        @Label("Parts Overheard")
+        @Description("Parts of a transfer addressed to another peer")
+        int partsOverheard;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Completed")
+        @Description("False if abandoned for another version")
+        boolean completed;
+    }
+
+    /**
+     * dispatching - begins a BatchDispatched event.
+     * @return null if JFR doesn't record them.
+     */
+    static BatchDispatched dispatching()
+    {
+        if (!BATCH_DISPATCHED.isEnabled())
+            return null;
+
+        BatchDispatched e = new BatchDispatched();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * dispatched - ends and commits e (if any), begun before dispatching a 
+     * batch of hellos HELLOs and messages other messages.
+     */
+    static void dispatched(BatchDispatched e, int hellos, int messages)
+    {
+        if (e == null)
+            return;
+
+        e.end();
+        if (e.shouldCommit())
+        {
+            e.nodeID   = Info.getMyID();
+            e.hellos   = hellos;
+            e.messages = messages;
+            e.commit();
+        }
+    }
+
+    /**
+     * decoding - begins a MessageDecoded event, before decoding a message.
+     * @return null if JFR doesn't record them.
+     */
+    static MessageDecoded decoding()
+    {
+        if (!MESSAGE_DECODED.isEnabled())
+            return null;
+
+        MessageDecoded e = new MessageDecoded();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * decoded - ends and commits e (if any), begun before decoding msg.
+     */
+    static void decoded(MessageDecoded e, String msg, boolean valid)
+    {
+        if (e == null)
+            return;
+
+        e.end();
+        if (!e.shouldCommit())
+            return;
+
+        int end = msg.indexOf(';');
+        commit(e, end < 0 ? "" : msg.substring(0, end), 
+            PartitionedWorkers.senderOf(msg), msg.length(), valid);
+    }
+
+    /**
+     * decoded - same for a HELLO parsed into hv.
+     */
+    static void decoded(MessageDecoded e, HelloView hv, boolean valid)
+    {
+        if (e == null)
+            return;
+
+        e.end();
+        if (e.shouldCommit())
+            commit(e, "HELLO", hv.getSenderID(), hv.getLength(), valid);
+    }
+
+    private static void commit(MessageDecoded e, String type, 
+                                String senderID, int length, boolean valid)
+    {
+        e.nodeID   = Info.getMyID();
+        e.type     = type;
+        e.senderID = senderID;
+        e.length   = length;
+        e.valid    = valid;
+        e.commit();
+    }
+
+    /**
+     * synSent - commits a SynSent event for sm if JFR records them.
+     */
+    static void synSent(SynMessage sm, boolean retry)
+    {
+        SynSent e = new SynSent();
+        if (!e.isEnabled())
+            return;
+
+        e.nodeID     = Info.getMyID();
+        e.peerID     = sm.getPeerID();
+        e.sequenceNo = sm.getSequenceNo();
+        e.retry      = retry;
+        e.firstPart  = sm.getFirstPart();
+        e.partCount  = sm.getPartCount();
+        e.commit();
+    }
+}
@@ -0,0 +1,294 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Anti-entropy gossip: any node holding an up-to-date replica can serve it,
+ * not only its origin.
+ * - Every DIGEST_INTERVAL, we broadcast DIGESTs summarizing the databases we
+ *   hold, as (origin, sequence#) pairs: mine and every replica we are
+ *   SYNCHRONIZED with.
+ * - On a DIGEST listing the version of an origin that its HELLOs announce and
+ *   that we lack, we PULL it from the sender of the DIGEST if it is a relay
+ *   (at most once per PULL_TIMEOUT), which answers with SNAP messages. The 
+ *   replica is adopted once complete (cf. SnapTransfer, 
+ *   Info.offerProvisional).
+ * - Meanwhile HelloReceiver gives the relays one SYN period before SYNing
+ *   the origin itself (cf. Info.isGossiping).
+ * A popular origin thus doesn't have to serve every neighbour. Serving PULLs
+ * is always enabled.
+ *
+ * DIGESTs, PULLs and SNAPs are processed by a single worker.
+ */
+class Gossip implements SimpleMessageHandler, Runnable
+{
+    private PartitionedWorkers<String> workers =
+        new PartitionedWorkers<>("Gossip.incoming", 1, this::process);
+    private MuxDemuxSimple myMuxDemux = null;
+
+    private final static long DIGEST_INTERVAL = 4000;
+    private final static long PULL_TIMEOUT    = 6000;
+
+    private boolean active = false;
+
+    /**
+     * Dictionnary associating originID to when we last pulled it.
+     * Only accessed by the worker.
+     */
+    private HashMap<String, Long> pulledAt = new HashMap<>();
+
+    /**
+     * The SNAPs of the replicas we pulled.
+     */
+    private SnapTransfer snaps = new SnapTransfer();
+
+    /**
+     * Dictionnary associating "peerID/originID" to the thread sending the
+     * database of originID to peerID. While the corresponding thread is still
+     * processing, we will ignore other PULLs of the same database by the peer.
+     */
+    private HashMap<String, Thread> myThreads = new HashMap<>();
+
+    public void setMuxDemux(MuxDemuxSimple md)
+    {
+        myMuxDemux = md;
+    }
+
+    /**
+     * setActive - whether to gossip, must be called before run().
+     */
+    public void setActive(boolean active)
+    {
+        this.active = active;
+        Info.setGossiping(active);
+    }
+
+    private static boolean accepts(String recved)
+    {
+        return recved.startsWith("DIGEST;") || recved.startsWith("PULL;") ||
+            recved.startsWith("SNAP;");
+    }
+
+    public void handleMessage(String recved, String source)
+    {
+        if (!accepts(recved))
+            return;
+
+        try
+        {
+            workers.dispatch(PartitionedWorkers.senderOf(recved), recved);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+
+    public void handleBatch(List<String> recved, List<String> senderIPs)
+    {
+        ArrayList<String> senderIDs = new ArrayList<String>();
+        ArrayList<String> msgs      = new ArrayList<String>();
+        for (String msg : recved)
+        {
+            if (!accepts(msg))
+                continue;
+            senderIDs.add(PartitionedWorkers.senderOf(msg));
+            msgs.add(msg);
+        }
+        if (msgs.isEmpty())
+            return;
+
+        try
+        {
+            workers.dispatchAll(senderIDs, msgs);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+
+    public void run()
+    {
+        if (this.active)
+        {
+            Thread digestThread = new Thread(() -> this.digestLoop());
+            digestThread.setDaemon(true);
+            digestThread.start();
+        }
+        workers.run();
+    }
+
+    /**
+     * digestLoop - broadcasts the summary of the databases we hold, split
+     * into DIGESTs of at most DigestMessage.MAX_ORIGINS origins.
+     */
+    private void digestLoop()
+    {
+        while (!Thread.interrupted())
+        {
+            LinkedHashMap<String, Integer> chunk = 
+                new LinkedHashMap<String, Integer>();
+            for (Map.Entry<String, Integer> version : 
+                    Info.getVersions().entrySet())
+            {
+                chunk.put(version.getKey(), version.getValue());
+                if (chunk.size() == DigestMessage.MAX_ORIGINS)
+                    this.sendDigest(chunk);
+            }
+            if (!chunk.isEmpty())
+                this.sendDigest(chunk);
+
+            try
+            {
+                Clock.sleep(DIGEST_INTERVAL);
+            }
+            catch (InterruptedException e)
+            {
+                System.err.println(e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void sendDigest(LinkedHashMap<String, Integer> chunk)
+    {
+        DigestMessage dm = new DigestMessage(Info.getMyID(), chunk);
+        myMuxDemux.send(dm.getDigestMessageAsEncodedString());
+        Metrics.digestsSent.increment();
+        chunk.clear();
+    }
+
+    private void process(int partition, List<String> batch)
+    {
+        for (String msg : batch)
+        {
+            Flight.MessageDecoded decoding = Flight.decoding();
+            try
+            {
+                if (msg.startsWith("DIGEST;"))
+                {
+                    DigestMessage dm = new DigestMessage(msg);
+                    Flight.decoded(decoding, msg, true);
+                    this.processDigest(dm);
+                }
+                else if (msg.startsWith("PULL;"))
+                {
+                    PullMessage pm = new PullMessage(msg);
+                    Flight.decoded(decoding, msg, true);
+                    this.processPull(pm);
+                }
+                else
+                {
+                    SnapMessage sm = new SnapMessage(msg);
+                    Flight.decoded(decoding, msg, true);
+                    this.processSnap(sm);
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // malformed
+                Flight.decoded(decoding, msg, false);
+                continue;
+            }
+            catch (RuntimeException e)
+            {
+                workers.failed(partition, e);
+            }
+        }
+    }
+
+    private void processDigest(DigestMessage dm)
+    {
+        String myID    = Info.getMyID();
+        String relayID = dm.getSenderID();
+        if (!this.active || relayID.equals(myID))
+            return;
+
+        long now = Clock.currentTimeMillis();
+        for (String originID : dm.getOrigins().keySet())
+        {
+            int sequenceNo = dm.getOrigins().get(originID);
+            if (originID.equals(myID))
+                continue;
+
+            // the origin itself is SYNed by HelloReceiver if no relay serves
+            if (originID.equals(relayID))
+                continue;
+
+            PeerRecord peerRecord = Info.getPeerRecord(originID);
+            if (!wants(peerRecord, sequenceNo) || 
+                peerRecord.isTransferInProgress())
+                continue;
+
+            Long pulled = this.pulledAt.get(originID);
+            if (pulled != null && now - pulled < PULL_TIMEOUT)
+                continue;
+
+            PullMessage pm = new PullMessage(myID, relayID, originID,
+                sequenceNo);
+            myMuxDemux.send(pm.getPullMessageAsEncodedString());
+            Metrics.pullsSent.increment();
+            this.pulledAt.put(originID, now);
+        }
+    }
+
+    private void processPull(PullMessage pm)
+    {
+        String senderID = pm.getSenderID();
+        if (!pm.getPeerID().equals(Info.getMyID()))
+            return;
+
+        Database db = Info.getDatabase(pm.getOriginID());
+        if (db == null || db.getDatabaseSequenceNo() != pm.getSequenceNo())
+            return;
+
+        String key = senderID + "/" + pm.getOriginID();
+        Thread t = this.myThreads.get(key);
+        if (t != null && t.isAlive())
+            return;
+
+        // send the SNAP messages containing the database
+        Thread sendSnapThread = new Thread(() ->
+            SnapTransfer.send(myMuxDemux, senderID, db));
+        if (this.myThreads.size() > 1024)
+            this.myThreads.values().removeIf(thread -> !thread.isAlive());
+        this.myThreads.put(key, sendSnapThread);
+        sendSnapThread.start();
+        Metrics.pullsServed.increment();
+    }
+
+    /**
+     * wants - only the version the origin announces itself is worth pulling,
+     * if we don't hold it yet.
+     * @param peerRecord the record of the origin, null if not (or no longer)
+     *                   in PeerTable.
+     */
+    private static boolean wants(PeerRecord peerRecord, int sequenceNo)
+    {
+        return peerRecord != null &&
+            peerRecord.getPeerSequenceNo() != sequenceNo &&
+            peerRecord.getAdvertisedSequenceNo() == sequenceNo;
+    }
+
+    /**
+     * processSnap - a wanted replica may come from any relay (e.g. if the one
+     * we pulled was too slow to answer and we pulled another one).
+     */
+    private void processSnap(SnapMessage sm)
+    {
+        if (!this.active || !sm.getPeerID().equals(Info.getMyID()) ||
+            !this.pulledAt.containsKey(sm.getOriginID()) ||
+            !wants(Info.getPeerRecord(sm.getOriginID()), sm.getSequenceNo()))
+            return;
+
+        this.snaps.add(sm);
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * A HelloMessage is a string formatted as follows:
  *      HELLO;senderID;sequence#;HelloInterval;NumPeers;peer1;peer2;...;peerN
@@ -23,7 +25,7 @@ public class HelloMessage
     final private int sequenceNo;
     final private int helloInterval;
     private int numPeers;
-    private String[] peers = new String[255];
+    private String[] peers;
     
     /**
      * Constructor1 -
@@ -49,7 +51,7 @@ public class HelloMessage
 
         this.senderID = tokens[1];
 
-        if (!this.senderID.matches("\\w+") || this.senderID.length() > 16)
+        if (!Tokenizer.isWord(this.senderID))
         {
             e = "should be a word (senderID=" + tokens[1] +")";
             throw new IllegalArgumentException(e);
@@ -84,6 +86,7 @@ public class HelloMessage
             throw new IllegalArgumentException(e);
         }
         
+        this.peers = new String[this.numPeers];
         for (int i=0; i<this.numPeers; i++)
             this.peers[i] = tokens[5+i];
 
@@ -103,7 +106,7 @@ public class HelloMessage
     {
         String e;
         
-        if (!senderID.matches("\\w+") || senderID.length() > 16)
+        if (!Tokenizer.isWord(senderID))
         {
             e = "should be a word (senderID=" + senderID +")";
             throw new IllegalArgumentException(e);
@@ -120,6 +123,7 @@ public class HelloMessage
 
         this.helloInterval = helloInterval;
         this.numPeers = 0;
+        this.peers = new String[8];
     }
 
     /** 
@@ -152,6 +156,9 @@ public class HelloMessage
             throw new IllegalArgumentException(e);
         }
 
+        if (this.numPeers == this.peers.length)
+            this.peers = Arrays.copyOf(this.peers, 
+                Math.min(255, Math.max(8, 2*this.numPeers)));
         this.peers[this.numPeers] = peerID;
         this.numPeers++;
     }
@@ -180,7 +187,8 @@ public class HelloMessage
     }
 
     /**
-     * The three following get methods are needed while receiving a HELLO.
+     * The three following get methods are needed while receiving a HELLO,
+     * getNumPeers while building one.
      */
     public String getSenderID()
     {
@@ -197,6 +205,11 @@ public class HelloMessage
         return this.helloInterval;
     }
 
+    public int getNumPeers()
+    {
+        return this.numPeers;
+    }
+
     /**
      * No need to set: 
      *  - final attributes are assigned in the constructor.
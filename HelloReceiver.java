@@ -1,28 +1,88 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
 /** 
- * - Ignore the messages we sent ourselves or of other types than HELLO.
+ * - Ignore the messages we sent ourselves or of other types than HELLO (which
+ *   arrive as views of the received bytes, parsed in place by the workers, 
+ *   cf. HelloView).
  * - Update PeerTable with other peer's messages.
- * - If PeerState becomes HEARD/INCONSISTENT then send back a SYN Message.
- * - We'll keep sending the same SYN until peer's sequence# is incremented.
+ * - If PeerState becomes HEARD/INCONSISTENT then send back a SYN Message 
+ *   (unless the databases are only fetched on demand, cf. Info.isLazy).
+ * - We'll keep sending the same SYN until peer's sequence# is incremented,
+ *   except while a LIST transfer of the peer (or a Bootstrap snapshot) is 
+ *   being received.
+ * 
+ * HELLOs are processed by PartitionedWorkers, partitioned by senderID.
  */
 class HelloReceiver implements SimpleMessageHandler, Runnable
 {
-    private static String TAG = "HelloReceiver - ";
-    private SynchronizedQueue incoming = new SynchronizedQueue(20);
+    private PartitionedWorkers<HelloView> workers = 
+        new PartitionedWorkers<>("HelloReceiver.incoming", this::process);
     private MuxDemuxSimple myMuxDemux = null;
 
+    /**
+     * Dictionnary associating peerID to the thread SYNing it: a HELLO 
+     * doesn't start another one while it is alive.
+     * One dictionnary per partition, only accessed by its worker.
+     */
+    private ArrayList<HashMap<String, Thread>> mySynThreads = new ArrayList<>();
+
+    HelloReceiver()
+    {
+        for (int i=0; i<workers.getPartitions(); i++)
+            mySynThreads.add(new HashMap<String, Thread>());
+    }
+
     public void setMuxDemux(MuxDemuxSimple md)
     {
         myMuxDemux = md;
     }
 
+    /**
+     * handleMessage - a HELLO received as a String (MuxDemuxSimple hands them
+     * to handleHellos).
+     */
     public void handleMessage(String recved, String source)
     {
+        if (!recved.startsWith("HELLO;"))
+            return;
+
+        byte[] data = recved.getBytes();
+        HelloView hv = HelloView.acquire();
         try
         {
-            incoming.enqueue(recved+"@"+source);
+            hv.wrap(data, 0, data.length, source);
+            hv.retain();
+            workers.dispatch(PartitionedWorkers.senderOf(recved), hv);
         }
         catch (InterruptedException e)
         {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            hv.release();
+        }
+        finally
+        {
+            hv.release();
+        }
+    }
+	
+    /**
+     * handleHellos - the views are retained until processed.
+     */
+    public void handleHellos(List<HelloView> hellos)
+    {
+        for (HelloView hv : hellos)
+            hv.retain();
+
+        try
+        {
+            workers.dispatchAll(hellos, i -> hellos.get(i).getSenderHash());
+        }
+        catch (InterruptedException e)
+        {
+            // the views not dispatched are not returned to the pool
             System.err.println(e);
             Thread.currentThread().interrupt();
             return;
@@ -31,62 +91,72 @@ class HelloReceiver implements SimpleMessageHandler, Runnable
 	
     public void run()
     {
-        while (!Thread.interrupted())
+        workers.run();
+    }
+
+    private void process(int partition, List<HelloView> batch)
+    {
+        for (HelloView hv : batch)
         {
-            String msgAndSenderIP;
             try
             {
-                msgAndSenderIP = incoming.dequeue();
-            }
-            catch (InterruptedException e)
-            {
-                System.err.println(e);
-                Thread.currentThread().interrupt();
-                return;
+                Flight.MessageDecoded decoding = Flight.decoding();
+                boolean valid = hv.parse();
+                Flight.decoded(decoding, hv, valid);
+                if (valid)
+                    this.processMessage(partition, hv);
+                else
+                    Metrics.unparsableDatagrams.increment();
             }
-
-            int index_at    = msgAndSenderIP.lastIndexOf("@"); 
-            String msg      = msgAndSenderIP.substring(0, index_at);
-            String senderIP = msgAndSenderIP.substring(index_at+1);
-
-            HelloMessage hm;
-            try
+            catch (RuntimeException e)
             {
-                hm = new HelloMessage(msg);
+                workers.failed(partition, e);
             }
-            catch (IllegalArgumentException e)
+            finally
             {
-                // Not a HELLO message (perhaps SYN, LIST, etc...)
-                continue;
+                hv.release();
             }
+        }
+    }
 
-            String peerID = hm.getSenderID();
-            if (!peerID.equals(Info.getMyID()))
-            {
-                Info.updatePeerTable(hm, senderIP);
-                PeerRecord peerRecord = Info.getPeerRecord(peerID);
-                
-                if (peerRecord.getPeerState() != PeerState.SYNCHRONIZED)
-                {    
-                    // send the same SYN until sequenceNo is incremented
-                    new Thread(() ->
+    private void processMessage(int partition, HelloView hm)
+    {
+        String peerID = hm.getSenderID();
+        if (!peerID.equals(Info.getMyID()))
+        {
+            Info.updatePeerTable(hm);
+            PeerRecord peerRecord = Info.getPeerRecord(peerID);
+            
+            // nothing to SYN if our replica is already the announced version
+            // (e.g. adopted from a Bootstrap snapshot)
+            Thread t = this.mySynThreads.get(partition).get(peerID);
+            if (!Info.isLazy() &&
+                peerRecord.getPeerState() != PeerState.SYNCHRONIZED &&
+                peerRecord.getPeerSequenceNo() != hm.getSequenceNo() &&
+                (t == null || !t.isAlive()))
+            {    
+                // send the same SYN until sequenceNo is incremented
+                Thread synThread = new Thread(() ->
+                {
+                    int sequenceNo = peerRecord.getPeerSequenceNo();
+                    boolean retry = false;
+                    // when gossiping, the relays get one SYN period to 
+                    // serve the replica first
+                    boolean wait = Info.isGossiping();
+                    
+                    while (peerRecord.getPeerSequenceNo() == sequenceNo)
                     {
-                        int sequenceNo = peerRecord.getPeerSequenceNo();
-                        
-                        while (peerRecord.getPeerSequenceNo() == sequenceNo)
+                        // the parts are already on their way (perhaps 
+                        // overheard from a transfer to another peer, or in 
+                        // the snapshot of a neighbour)
+                        if (wait || peerRecord.isTransferInProgress() ||
+                            Info.isBootstrapping())
                         {
-                            SynMessage sm = new SynMessage(
-                                Info.getMyID(), peerID, sequenceNo);
-                            
-                            String toSend = sm.getSynMessageAsEncodedString();
-                            myMuxDemux.send(toSend);
-                            
-                            if (Info.DEBUG)
-                                System.out.println(TAG + toSend);
-
+                            wait = false;
+                            Metrics.synSuppressed.increment();
                             try
                             {
-                                Thread.sleep(6000);
+                                Clock.sleep(6000);
                             }
                             catch (InterruptedException e)
                             {
@@ -94,9 +164,38 @@ class HelloReceiver implements SimpleMessageHandler, Runnable
                                 Thread.currentThread().interrupt();
                                 return;
                             }
+                            continue;
+                        }
+
+                        SynMessage sm = new SynMessage(
+                            Info.getMyID(), peerID, sequenceNo);
+                        
+                        String toSend = sm.getSynMessageAsEncodedString();
+                        myMuxDemux.send(toSend);
+                        
+                        Metrics.synSent.increment();
+                        if (retry)
+                            Metrics.synRetries.increment();
+                        Flight.synSent(sm, retry);
+                        retry = true;
+                        
+                        Trace.log(Trace.Event.SYN_SENT, 
+                            Trace.symbol(peerID), sequenceNo);
+
+                        try
+                        {
+                            Clock.sleep(6000);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            System.err.println(e);
+                            Thread.currentThread().interrupt();
+                            return;
                         }
-                    }).start();
-                }
+                    }
+                });
+                this.mySynThreads.get(partition).put(peerID, synThread);
+                synThread.start();
             }
         }
     }
@@ -1,9 +1,15 @@
 class HelloSender implements SimpleMessageHandler, Runnable
 {
-    private static String TAG = "HelloSender   - ";
-    private SynchronizedQueue incoming = new SynchronizedQueue(20);
+    private SynchronizedQueue<String> incoming = 
+        new SynchronizedQueue<>(20, "HelloSender.incoming");
     private MuxDemuxSimple myMuxDemux = null;
 
+    /**
+     * The last HELLO sent, and its encoded string.
+     */
+    private HelloMessage lastHello   = null;
+    private String       lastEncoded = null;
+
     public void setMuxDemux(MuxDemuxSimple md)
     {
         myMuxDemux = md;
@@ -20,21 +26,23 @@ class HelloSender implements SimpleMessageHandler, Runnable
     {
         while (!Thread.interrupted())
         {
-            HelloMessage hm = new HelloMessage(Info.getMyID(), 
-                Info.getMySequenceNo(), Info.getMyHelloInterval());
-            
-            for (String peerID : Info.getPeerSet())
-                hm.addPeer(peerID);
+            // cached by Info until the peers or my sequence# change
+            HelloMessage hm = Info.getMyHello();
+            if (hm != lastHello)
+            {
+                lastEncoded = hm.getHelloMessageAsEncodedString();
+                lastHello   = hm;
+            }
 
-            String toSend = hm.getHelloMessageAsEncodedString();
+            String toSend = lastEncoded;
             myMuxDemux.send(toSend);
             
-            if (Info.DEBUG)
-                System.out.println(TAG + toSend);
+            Trace.log(Trace.Event.HELLO_SENT, hm.getSequenceNo(), 
+                hm.getNumPeers());
             
             try
             {
-                Thread.sleep(2000);
+                Clock.sleep(2000);
             }
             catch (InterruptedException e)
             {
@@ -0,0 +1,213 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A HelloView is a read-only view of a received HELLO message (cf.
+ * HelloMessage for the format), parsed in place by a Tokenizer: only the
+ * senderID becomes a String (allocated once per peer, cf. Tokenizer.symbol),
+ * the peers are compared byte by byte by inPeers, and the IP address of the
+ * sender is carried along as a field.
+ *
+ * The receive loop of MuxDemuxSimple only copies the bytes (wrap): the views
+ * are parsed by the workers of HelloReceiver, which they are partitioned 
+ * among by getSenderHash.
+ *
+ * Views are pooled: MuxDemuxSimple acquires one per received HELLO and
+ * releases it once every handler has seen it. A handler which keeps a view
+ * for later (e.g. HelloReceiver, until its workers have processed it) must
+ * retain it, and release it when done.
+ */
+public class HelloView
+{
+    private final static int POOL_SIZE = 1024;
+    private final static ArrayBlockingQueue<HelloView> pool =
+        new ArrayBlockingQueue<HelloView>(POOL_SIZE);
+
+    /**
+     * A copy of the message: the receive buffer is reused for the next
+     * datagram.
+     */
+    private byte[] data = new byte[2048];
+    private int length = 0;
+    private int senderHash = 0;
+    private final Tokenizer tokens = new Tokenizer();
+    private final AtomicInteger references = new AtomicInteger();
+
+    private String senderID = null;
+    private int sequenceNo;
+    private int helloInterval;
+    private int numPeers;
+    private String senderIP = null;
+
+    private HelloView()
+    {}
+
+    /**
+     * acquire - a view from the pool (a new one if it is empty), with one
+     * reference.
+     */
+    public static HelloView acquire()
+    {
+        HelloView hv = pool.poll();
+        if (hv == null)
+        {
+            hv = new HelloView();
+            Metrics.helloViewsCreated.increment();
+        }
+        hv.references.set(1);
+        return hv;
+    }
+
+    public void retain()
+    {
+        this.references.incrementAndGet();
+    }
+
+    /**
+     * release - back to the pool once the last reference is released.
+     */
+    public void release()
+    {
+        if (this.references.decrementAndGet() == 0)
+        {
+            this.senderID = null;
+            this.senderIP = null;
+            pool.offer(this);
+        }
+    }
+
+    /**
+     * parse - wrap then parse, in the calling thread.
+     * @return false if it is not a well-formed HELLO message.
+     */
+    public boolean parse(byte[] data, int offset, int length, String senderIP)
+    {
+        this.wrap(data, offset, length, senderIP);
+        return this.parse();
+    }
+
+    /**
+     * wrap - copies data[offset, offset+length[, to be parsed later, and 
+     * hashes its second field (the senderID of a HELLO).
+     */
+    public void wrap(byte[] data, int offset, int length, String senderIP)
+    {
+        if (length > this.data.length)
+            this.data = new byte[length];
+        System.arraycopy(data, offset, this.data, 0, length);
+        this.length   = length;
+        this.senderIP = senderIP;
+        this.senderID = null;
+
+        int i = 0;
+        while (i < length && this.data[i] != ';')
+            i++;
+        // as String.hashCode, for an ASCII senderID
+        int hash = 0;
+        for (i++; i < length && this.data[i] != ';'; i++)
+            hash = 31*hash + (this.data[i] & 0xff);
+        this.senderHash = hash;
+    }
+
+    /**
+     * parse - checks the wrapped message as Constructor1 of HelloMessage 
+     * does, but without throwing.
+     * @return false if it is not a well-formed HELLO message.
+     */
+    public boolean parse()
+    {
+        int length = this.length;
+        Tokenizer t = this.tokens;
+        t.reset(this.data, 0, length);
+        if (t.count() < 5 || !t.equals(0, "HELLO") || !t.isWord(1))
+            return false;
+
+        long sequenceNo    = t.parseInt(2);
+        long helloInterval = t.parseInt(3);
+        long numPeers      = t.parseInt(4);
+        if (sequenceNo == Tokenizer.NOT_AN_INT ||
+            helloInterval > 255 || helloInterval < 0 ||
+            numPeers > 255 || numPeers < 0 ||
+            t.count() != 5 + numPeers)
+            return false;
+
+        this.senderID      = t.symbol(1);
+        this.sequenceNo    = (int) sequenceNo;
+        this.helloInterval = (int) helloInterval;
+        this.numPeers      = (int) numPeers;
+        return true;
+    }
+
+    /**
+     * getHelloMessageAsEncodedString - the message as received, for the
+     * handlers which need it as a String.
+     */
+    public String getHelloMessageAsEncodedString()
+    {
+        return new String(this.data, 0, this.length);
+    }
+
+    public String toString()
+    {
+        return this.getHelloMessageAsEncodedString() + "@" + this.senderIP;
+    }
+
+    /**
+     * getSenderID - 
+     * @return the senderID, null until successfully parsed.
+     */
+    public String getSenderID()
+    {
+        return this.senderID;
+    }
+
+    /**
+     * getSenderHash - the hashCode of the senderID (if it is a word, as in a
+     * well-formed HELLO), available once wrapped.
+     */
+    public int getSenderHash()
+    {
+        return this.senderHash;
+    }
+
+    public int getSequenceNo()
+    {
+        return this.sequenceNo;
+    }
+
+    public int getHelloInterval()
+    {
+        return this.helloInterval;
+    }
+
+    public int getNumPeers()
+    {
+        return this.numPeers;
+    }
+
+    public String getSenderIP()
+    {
+        return this.senderIP;
+    }
+
+    /**
+     * getLength - of the message, in bytes.
+     */
+    public int getLength()
+    {
+        return this.length;
+    }
+
+    /**
+     * inPeers - same as HelloMessage.inPeers, without decoding the peers.
+     */
+    public boolean inPeers(String receiverID)
+    {
+        for (int i=0; i<this.numPeers; i++)
+        {
+            if (this.tokens.equals(5 + i, receiverID))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values (e.g. durations in ms).
+ *
+ * Values are counted in 64 power-of-two buckets: bucket i holds the values in
+ * [2^(i-1);2^i[ (bucket 0 holds 0), so recording is a single atomic increment
+ * and percentiles are approximated by the upper bound of their bucket.
+ */
+public class Histogram implements HistogramMBean
+{
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+
+        this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    public double getMean()
+    {
+        long n = this.count.sum();
+        return n == 0 ? 0 : ((double) this.sum.sum()) / n;
+    }
+
+    public long getP50()
+    {
+        return this.getPercentile(0.50);
+    }
+
+    public long getP90()
+    {
+        return this.getPercentile(0.90);
+    }
+
+    public long getP99()
+    {
+        return this.getPercentile(0.99);
+    }
+
+    /**
+     * getPercentile - 
+     * @return the upper bound of the bucket holding the p-th percentile.
+     */
+    public long getPercentile(double p)
+    {
+        long n = this.count.sum();
+        if (n == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i=0; i<64; i++)
+        {
+            seen += this.buckets.get(i);
+            if (seen >= rank)
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, this.getMax());
+        }
+        return this.getMax();
+    }
+}
\ No newline at end of file
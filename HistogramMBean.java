@@ -0,0 +1,12 @@
+/**
+ * JMX view of a Histogram (cf. Metrics).
+ */
+public interface HistogramMBean
+{
+    public long getCount();
+    public long getMax();
+    public double getMean();
+    public long getP50();
+    public long getP90();
+    public long getP99();
+}
\ No newline at end of file
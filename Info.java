@@ -1,4 +1,11 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 /**
@@ -9,12 +16,9 @@ import java.util.Set;
  */
 public class Info
 {
-    public final static boolean DEBUG = true;
-    
-    private final static String TAG = "Info          - ";
     private final static Object lock = new Object();
 
-    private final static String myID = "TzuyiDell"; //I tested with my another machine "TzuyiHP"
+    private static String myID = "TzuyiDell"; //I tested with my another machine "TzuyiHP"
     private final static int myHelloInterval = 30;
 
     /** 
@@ -24,7 +28,115 @@ public class Info
     public static HashMap<String, PeerRecord> myPeerTable = 
         new HashMap<String, PeerRecord>();
 
-    private static Database myDatabase = new Database();
+    /**
+     * The live-peer view: the IDs of PeerTable in order of discovery, 
+     * maintained incrementally when a peer is added or expires, with a 
+     * version number incremented on every change. myExpiries orders the 
+     * PeerRecords by expiration time so that the expired ones are found 
+     * without scanning PeerTable. As the expiration time of a peer moves 
+     * with every HELLO (cf. FailureDetector), an Expiry is only a time at 
+     * which to check it again: myScheduled tells the time of the last 
+     * Expiry of every peer, the others (and those of removed records) are
+     * skipped. A peer is only rescheduled earlier than its last Expiry by 
+     * more than EXPIRY_SLACK ms, so that the queue doesn't grow with every 
+     * HELLO while its FailureDetector learns. Guarded by lock.
+     */
+    private static LinkedHashSet<String> myLivePeers = 
+        new LinkedHashSet<String>();
+    private static PriorityQueue<Expiry> myExpiries = 
+        new PriorityQueue<Expiry>(Comparator.comparingLong(e -> e.time));
+    private static HashMap<String, Long> myScheduled = 
+        new HashMap<String, Long>();
+    private static long myLivePeersVersion = 0;
+    private final static long EXPIRY_SLACK = 1000;
+
+    private static class Expiry
+    {
+        final long       time;
+        final PeerRecord peerRecord;
+
+        Expiry(long time, PeerRecord peerRecord)
+        {
+            this.time       = time;
+            this.peerRecord = peerRecord;
+        }
+    }
+
+    /**
+     * The HELLO we send (cf. getMyHello), rebuilt only when the live-peer
+     * view or my sequence# changed since. Guarded by lock.
+     */
+    private static HelloMessage myHello = null;
+    private static long myHelloVersion = -1;
+
+    private static volatile Database myDatabase = new Database(myID);
+
+    /**
+     * The encoded LIST messages of the current version of my database, built
+     * on first use (cf. getMyListCache). Guarded by myDataLock, which also
+     * keeps the data and the sequence# of myDatabase consistent.
+     */
+    private final static Object myDataLock = new Object();
+    private static ListCache myListCache = null;
+
+    /**
+     * Replicas received from a neighbour while bootstrapping (cf. Bootstrap),
+     * not trusted until a HELLO of their origin announces the same sequence#:
+     * they are dropped if it doesn't within the helloInterval.
+     * Guarded by lock.
+     */
+    private static HashMap<String, Database> myProvisional = 
+        new HashMap<String, Database>();
+    private static HashMap<String, Long> myProvisionalDeadlines = 
+        new HashMap<String, Long>();
+
+    /**
+     * Whether a Bootstrap snapshot is being fetched: HelloReceiver doesn't 
+     * SYN meanwhile.
+     */
+    private static volatile boolean myBootstrapping = false;
+
+    /**
+     * Whether the databases of the peers are only fetched on demand (cf. 
+     * LazyReplica) instead of replicated: HelloReceiver doesn't SYN then.
+     */
+    private static volatile boolean myLazy = false;
+
+    /**
+     * Whether Gossip relays replicas: HelloReceiver then gives the relays 
+     * some time before SYNing the origin.
+     */
+    private static volatile boolean myGossiping = false;
+
+    /**
+     * Index over my database and all the replicas of our PeerTable, kept up
+     * to date whenever one of them is replaced or a peer expires.
+     */
+    private static DataIndex myIndex = new DataIndex();
+
+    /**
+     * Whether getIndex was called: a replica budget can't be set then (cf.
+     * setReplicaBudget).
+     */
+    private static volatile boolean myIndexUsed = false;
+
+    /**
+     * Where the replicas are spilled to disk when they exceed the memory 
+     * budget, null if there is none (cf. setReplicaBudget).
+     */
+    private static volatile ReplicaStore myReplicaStore = null;
+
+    /**
+     * The replicas of the peers which expired lately, null if they are not
+     * kept (cf. setTombstones). Guarded by lock.
+     */
+    private static Tombstones myTombstones = null;
+
+    /**
+     * Asynchronous delivery of PeerEvents to the application, bounded so that
+     * a slow subscriber can't stall the protocol threads.
+     */
+    private static EventDispatcher myDispatcher = new EventDispatcher(1024);
 
     /**
      * private constructor because it makes no sense to instantiate this class.
@@ -36,6 +148,20 @@ public class Info
         return myID;
     }
 
+    /**
+     * setMyID - must be called before the handlers are started (e.g. by the 
+     * simulator, which runs many nodes inside the same JVM).
+     */
+    public static void setMyID(String id)
+    {
+        synchronized (myDataLock)
+        {
+            myID = id;
+            myDatabase = new Database(id, myDatabase.getData(), 
+                myDatabase.getDatabaseSequenceNo());
+        }
+    }
+
     public static int getMyHelloInterval()
     {
         return myHelloInterval;
@@ -53,15 +179,104 @@ public class Info
     
     public static void updateMyDatabase(String[] newData, int newSequenceNo)
     {
-        myDatabase.updateDatabase(newData, newSequenceNo);
+        synchronized (myDataLock)
+        {
+            // replaced, never modified: it may be relayed meanwhile
+            myDatabase = new Database(myID, newData, newSequenceNo);
+            if (myListCache != null && 
+                myListCache.getSequenceNo() != newSequenceNo)
+                myListCache = null;
+        }
+        myIndex.update(myID, newData);
+    }
+
+    /**
+     * getMyListCache - 
+     *      the LIST messages of my current database, ready to be sent.
+     */
+    public static ListCache getMyListCache()
+    {
+        synchronized (myDataLock)
+        {
+            if (myListCache == null)
+                myListCache = new ListCache(myID, 
+                    myDatabase.getDatabaseSequenceNo(), myDatabase.getData());
+            else
+                Metrics.listCacheHits.increment();
+            return myListCache;
+        }
+    }
+
+    /**
+     * getIndex - 
+     *      exact-match and prefix lookups over all the databases we know.
+     * @throws IllegalStateException if a replica budget is set, since the
+     * replicas are then no longer indexed (cf. setReplicaBudget).
+     */
+    public static DataIndex getIndex()
+    {
+        synchronized (lock)
+        {
+            if (myReplicaStore != null)
+                throw new IllegalStateException(
+                    "the replicas aren't indexed with a replica budget");
+            myIndexUsed = true;
+            return myIndex;
+        }
+    }
+
+    /**
+     * setReplicaBudget - caps the (estimated) heap used by the replicas of 
+     * PeerTable: the least recently read or updated ones are spilled into 
+     * directory and reloaded on access (cf. ReplicaStore). Since DataIndex 
+     * keeps every string it indexes, the replicas are then no longer 
+     * indexed, and getIndex fails.
+     * Must be called before the handlers are started.
+     * @throws IllegalStateException if getIndex was called already.
+     */
+    public static void setReplicaBudget(long bytes, File directory)
+    {
+        synchronized (lock)
+        {
+            if (myIndexUsed)
+                throw new IllegalStateException(
+                    "the index is in use, the replicas can't be spilled");
+            myReplicaStore = new ReplicaStore(bytes, directory);
+            for (String peerID : myPeerTable.keySet())
+                myIndex.remove(peerID);
+        }
+    }
+
+    static ReplicaStore getReplicaStore()
+    {
+        return myReplicaStore;
+    }
+
+    public static void subscribe(PeerListener listener)
+    {
+        myDispatcher.subscribe(listener);
+    }
+
+    public static void unsubscribe(PeerListener listener)
+    {
+        myDispatcher.unsubscribe(listener);
+    }
+
+    static void publish(PeerEvent event)
+    {
+        myDispatcher.publish(event);
     }
 
     /**
      * verifyRecordValid is a mandatory method that verifies that peers aren't
-     * expired. Called whenever we try to access our PeerTable (actually in 
-     * every methods below).
+     * expired. Called whenever we try to access a PeerRecord of our PeerTable.
      */
     private static void verifyRecordValid(String peerID)
+    {
+        verifyRecordValid(peerID, Clock.currentTimeMillis());
+    }
+
+    private static void verifyRecordValid(String peerID, long now)
     {
         synchronized (lock)
         {
@@ -71,14 +286,76 @@ public class Info
                 return;
             
             long peerExpirationTime = peerRecord.getExpirationTime();
-            if (System.currentTimeMillis() > peerExpirationTime)
+            if (now > peerExpirationTime)
+                removePeer(peerRecord);
+        }
+    }
+
+    /**
+     * schedule - checks peerRecord again at time. Must be called with lock
+     * held.
+     */
+    private static void schedule(PeerRecord peerRecord, long time)
+    {
+        myScheduled.put(peerRecord.getPeerID(), time);
+        myExpiries.add(new Expiry(time, peerRecord));
+    }
+
+    /**
+     * expirePeers - removes all the expired peers, in O(1) when none is.
+     */
+    private static void expirePeers()
+    {
+        synchronized (lock)
+        {
+            long now = Clock.currentTimeMillis();
+            while (!myExpiries.isEmpty() && now > myExpiries.peek().time)
             {
-                myPeerTable.remove(peerID);
-                if (Info.DEBUG)
-                    System.out.println(TAG + peerID + ": PeerRecord deleted");
+                Expiry expiry = myExpiries.poll();
+                PeerRecord peerRecord = expiry.peerRecord;
+                String peerID = peerRecord.getPeerID();
+                if (myPeerTable.get(peerID) != peerRecord ||
+                    myScheduled.get(peerID) != expiry.time)
+                    continue;
+
+                // heard from meanwhile
+                long expirationTime = peerRecord.getExpirationTime();
+                if (now > expirationTime)
+                    removePeer(peerRecord);
+                else
+                    schedule(peerRecord, expirationTime);
             }
         }
     }
+
+    private static void removePeer(PeerRecord peerRecord)
+    {
+        String peerID = peerRecord.getPeerID();
+
+        // with a ReplicaStore, only its file is kept (never read back 
+        // with lock held)
+        boolean buried = myTombstones != null && 
+            peerRecord.getPeerSequenceNo() >= 0;
+        if (buried)
+        {
+            Database db = myReplicaStore == null ? 
+                peerRecord.getPeerDatabase() : 
+                new Database(peerID, null, peerRecord.getPeerSequenceNo());
+            myTombstones.bury(db, Clock.currentTimeMillis());
+        }
+
+        myPeerTable.remove(peerID);
+        myLivePeers.remove(peerID);
+        myScheduled.remove(peerID);
+        Metrics.peersExpired.increment();
+        myLivePeersVersion++;
+        myIndex.remove(peerID);
+        if (myReplicaStore != null)
+            myReplicaStore.remove(peerRecord, buried);
+        publish(PeerEvent.expired(peerID, peerRecord.getPeerState(),
+            peerRecord.getPeerSequenceNo()));
+        Trace.log(Trace.Event.PEER_DELETED, Trace.symbol(peerID), 0);
+    }
     
     public static PeerRecord getPeerRecord(String peerID)
     {
@@ -93,44 +370,345 @@ public class Info
     {
         synchronized (lock)
         {
-            Set<String> peerIDs = myPeerTable.keySet();
-        
-            for (String peerID : peerIDs)
-                verifyRecordValid(peerID);
-        
-            return myPeerTable.keySet();
+            expirePeers();
+            return new HashSet<String>(myLivePeers);
         }
     }
 
     public static boolean inPeers(String peerID)
     {
-        Set<String> peerSet = getPeerSet();
-        for (String peer : peerSet)
+        synchronized (lock)
+        {
+            expirePeers();
+            return myLivePeers.contains(peerID);
+        }
+    }
+
+    /**
+     * getMyHello - 
+     *      the HELLO to send, listing (up to 255 of) the live peers in order
+     *      of discovery. The same instance is returned until the next change
+     *      (HelloSender only re-encodes it then): don't modify it.
+     */
+    public static HelloMessage getMyHello()
+    {
+        synchronized (lock)
+        {
+            expirePeers();
+
+            int mySequenceNo = getMySequenceNo();
+            if (myHello == null || myHelloVersion != myLivePeersVersion ||
+                myHello.getSequenceNo() != mySequenceNo || 
+                !myHello.getSenderID().equals(myID))
+            {
+                myHello = new HelloMessage(myID, mySequenceNo, 
+                    myHelloInterval);
+                // a HELLO can't list more than 255 peers
+                for (String peerID : myLivePeers)
+                {
+                    if (myHello.getNumPeers() == 255)
+                        break;
+                    myHello.addPeer(peerID);
+                }
+                myHelloVersion = myLivePeersVersion;
+                Metrics.helloBuilds.increment();
+            }
+            return myHello;
+        }
+    }
+
+    public static boolean isBootstrapping()
+    {
+        return myBootstrapping;
+    }
+
+    public static void setBootstrapping(boolean bootstrapping)
+    {
+        myBootstrapping = bootstrapping;
+    }
+
+    public static boolean isLazy()
+    {
+        return myLazy;
+    }
+
+    /**
+     * setLazy - whether the databases of the peers are only fetched on 
+     * demand, through PeerRecord.getLazyReplica. Must be called before the
+     * handlers are started.
+     */
+    public static void setLazy(boolean lazy)
+    {
+        myLazy = lazy;
+    }
+
+    /**
+     * getSuspicion - how likely it is that the peer is gone, as the phi of 
+     * its FailureDetector: it is expired beyond getPhiThreshold().
+     * @return +Infinity if it isn't in PeerTable (anymore).
+     */
+    public static double getSuspicion(String peerID)
+    {
+        synchronized (lock)
+        {
+            PeerRecord peerRecord = myPeerTable.get(peerID);
+            if (peerRecord == null)
+                return Double.POSITIVE_INFINITY;
+            return peerRecord.suspicion(Clock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * setTombstones - the replicas of the expired peers are kept for grace
+     * ms (at most capacity of them, 0 for none), and restored if the peer is 
+     * heard again meanwhile (cf. Tombstones). None by default. With a 
+     * replica budget (cf. setReplicaBudget), they are kept on disk.
+     */
+    public static void setTombstones(int capacity, long grace)
+    {
+        synchronized (lock)
+        {
+            myTombstones = capacity > 0 ? 
+                new Tombstones(capacity, grace) : null;
+        }
+    }
+
+    public static double getPhiThreshold()
+    {
+        return FailureDetector.getThreshold();
+    }
+
+    /**
+     * setPhiThreshold - the suspicion level (cf. getSuspicion) beyond which
+     * a peer is expired, FailureDetector.DEFAULT_THRESHOLD by default: the
+     * higher, the fewer live peers are wrongly expired (phi = 8 means once 
+     * in 10^8 intervals), but the longer a dead one stays in our HELLOs.
+     * Must be called before the handlers are started.
+     */
+    public static void setPhiThreshold(double phi)
+    {
+        FailureDetector.setThreshold(phi);
+    }
+
+    public static boolean isGossiping()
+    {
+        return myGossiping;
+    }
+
+    public static void setGossiping(boolean gossiping)
+    {
+        myGossiping = gossiping;
+    }
+
+    /**
+     * getSnapshot - 
+     *      my database and all the replicas we are SYNCHRONIZED with (cf. 
+     *      Bootstrap, Gossip). Databases are never modified in place.
+     *      The spilled replicas are read back once lock is released.
+     */
+    public static ArrayList<Database> getSnapshot()
+    {
+        ArrayList<Database> res = new ArrayList<Database>();
+        synchronized (myDataLock)
+        {
+            res.add(myDatabase);
+        }
+        ArrayList<PeerRecord> synchronizedPeers = new ArrayList<PeerRecord>();
+        synchronized (lock)
+        {
+            expirePeers();
+            for (PeerRecord peerRecord : myPeerTable.values())
+            {
+                if (peerRecord.getPeerState() == PeerState.SYNCHRONIZED)
+                    synchronizedPeers.add(peerRecord);
+            }
+        }
+        for (PeerRecord peerRecord : synchronizedPeers)
+            res.add(peerRecord.getPeerDatabase());
+        return res;
+    }
+
+    /**
+     * getVersions - 
+     *      the origin and sequence# of the databases of getSnapshot, without
+     *      reading back the replicas spilled to disk (cf. Gossip).
+     */
+    public static LinkedHashMap<String, Integer> getVersions()
+    {
+        LinkedHashMap<String, Integer> res = 
+            new LinkedHashMap<String, Integer>();
+        synchronized (myDataLock)
+        {
+            res.put(myID, myDatabase.getDatabaseSequenceNo());
+        }
+        synchronized (lock)
+        {
+            expirePeers();
+            for (PeerRecord peerRecord : myPeerTable.values())
+            {
+                if (peerRecord.getPeerState() == PeerState.SYNCHRONIZED)
+                    res.put(peerRecord.getPeerID(), 
+                        peerRecord.getPeerSequenceNo());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * getDatabase - 
+     *      my database or the replica of originID, null if we don't hold it.
+     */
+    public static Database getDatabase(String originID)
+    {
+        synchronized (myDataLock)
         {
-            if (peer.equals(peerID))
-                return true;
+            if (originID.equals(myID))
+                return myDatabase;
         }
-        return false;
+        PeerRecord peerRecord = getPeerRecord(originID);
+        return peerRecord == null ? null : peerRecord.getPeerDatabase();
+    }
+
+    /**
+     * offerProvisional - a replica of originID relayed by a neighbour: it is
+     * adopted right away if the last HELLO of originID announced this 
+     * sequence#, else kept until its next HELLO (cf. updatePeerTable).
+     */
+    public static void offerProvisional(String originID, String[] data, 
+                                            int sequenceNo)
+    {
+        if (originID.equals(myID))
+            return;
+
+        synchronized (lock)
+        {
+            long now = Clock.currentTimeMillis();
+            myProvisionalDeadlines.values().removeIf(deadline -> now > deadline);
+            myProvisional.keySet().retainAll(myProvisionalDeadlines.keySet());
+
+            PeerRecord peerRecord = getPeerRecord(originID);
+            if (peerRecord != null)
+            {
+                if (peerRecord.getPeerSequenceNo() == sequenceNo)
+                    return;
+                if (peerRecord.getAdvertisedSequenceNo() == sequenceNo)
+                {
+                    replaceReplica(peerRecord, data, sequenceNo);
+                    Metrics.replicasAdopted.increment();
+                    return;
+                }
+            }
+            myProvisional.put(originID, 
+                new Database(originID, data, sequenceNo));
+            myProvisionalDeadlines.put(originID, 
+                now + ((long) myHelloInterval)*1000);
+        }
+    }
+
+    /**
+     * replicaBefore - the data of peerRecord, to publish how it is updated.
+     * Must be called with lock held, so a spilled replica isn't read back 
+     * from disk: it counts as empty, i.e. all its parts changed.
+     * @return null if nobody subscribed.
+     */
+    private static String[] replicaBefore(PeerRecord peerRecord)
+    {
+        if (!myDispatcher.hasListeners())
+            return null;
+        if (myReplicaStore == null)
+            return peerRecord.getPeerData();
+        Database db = peerRecord.getResidentDatabase();
+        return db == null ? new String[0] : db.getData();
+    }
+
+    /**
+     * Must be called with lock held.
+     */
+    private static void replaceReplica(PeerRecord peerRecord, 
+                                        String[] newData, int newSequenceNo)
+    {
+        String peerID = peerRecord.getPeerID();
+        String[] oldData = replicaBefore(peerRecord);
+        peerRecord.updatePeerDatabase(newData, newSequenceNo);
+        stored(peerRecord);
+        if (oldData != null)
+            publish(PeerEvent.replicaUpdated(peerID, oldData, newData,
+                newSequenceNo));
     }
 
     public static void updatePeerTable(HelloMessage hm, String ip)
     {
-        String senderID = hm.getSenderID();
-        int senderSequenceNo = hm.getSequenceNo();
-        int senderHelloInterval = hm.getHelloInterval();
+        updatePeerTable(hm.getSenderID(), hm.getSequenceNo(), 
+            hm.getHelloInterval(), hm.inPeers(myID), ip);
+    }
+
+    /**
+     * updatePeerTable - same as above, with a HELLO parsed in place.
+     */
+    public static void updatePeerTable(HelloView hv)
+    {
+        updatePeerTable(hv.getSenderID(), hv.getSequenceNo(), 
+            hv.getHelloInterval(), hv.inPeers(myID), hv.getSenderIP());
+    }
 
+    private static void updatePeerTable(String senderID, int senderSequenceNo,
+                                        int senderHelloInterval, 
+                                        boolean listsMe, String ip)
+    {
+        // a tombstone restored from disk, read back once lock is released
+        PeerRecord unearthed = null;
         synchronized (lock)
         {
-            PeerRecord peerRecord = getPeerRecord(senderID);
+            long now = Clock.currentTimeMillis();
+            verifyRecordValid(senderID, now);
+            PeerRecord peerRecord = myPeerTable.get(senderID);
             if (peerRecord == null)
             {
                 peerRecord = new PeerRecord(senderID, ip, senderHelloInterval);
                 myPeerTable.put(senderID, peerRecord);
-                if (DEBUG)
-                    System.out.println(TAG + senderID + ": PeerRecord created");
+                myLivePeers.add(senderID);
+                schedule(peerRecord, peerRecord.getExpirationTime());
+                myLivePeersVersion++;
+                publish(PeerEvent.joined(senderID));
+                Trace.log(Trace.Event.PEER_CREATED, Trace.symbol(senderID), 0);
+
+                // expired lately: its last replica is as good as any
+                Database tombstone = myTombstones == null ? null :
+                    myTombstones.exhume(senderID, now);
+                if (tombstone != null && tombstone.getData() == null)
+                {
+                    // spilled: reloaded from its file on access
+                    peerRecord.updatePeerDatabase(null, 
+                        tombstone.getDatabaseSequenceNo());
+                    unearthed = peerRecord;
+                }
+                else if (tombstone != null)
+                    replaceReplica(peerRecord, tombstone.getData(), 
+                        tombstone.getDatabaseSequenceNo());
+            }
+            else
+            {
+                peerRecord.heard(senderHelloInterval, now);
+                // checked earlier if it may now expire earlier (e.g. once 
+                // its actual HELLO period is learnt)
+                long expirationTime = peerRecord.getExpirationTime();
+                if (expirationTime + EXPIRY_SLACK < myScheduled.get(senderID))
+                    schedule(peerRecord, expirationTime);
             }
+            peerRecord.setAdvertisedSequenceNo(senderSequenceNo);
 
-            if (hm.inPeers(myID))
+            Database provisional = myProvisional.remove(senderID);
+            myProvisionalDeadlines.remove(senderID);
+            if (provisional != null && 
+                provisional.getDatabaseSequenceNo() == senderSequenceNo &&
+                peerRecord.getPeerSequenceNo() != senderSequenceNo)
+            {
+                replaceReplica(peerRecord, provisional.getData(), 
+                    senderSequenceNo);
+                Metrics.replicasAdopted.increment();
+            }
+
+            if (listsMe)
             {
                 PeerState peerState = peerRecord.getPeerState();
                 int peerSequenceNo  = peerRecord.getPeerSequenceNo();
@@ -138,25 +716,60 @@ public class Info
                 if (peerSequenceNo != senderSequenceNo)
                 {
                     if (peerState != PeerState.INCONSISTENT)
-                    {
                         peerRecord.setPeerState(PeerState.INCONSISTENT);
-                        if (Info.DEBUG)
-                            System.out.println(TAG + senderID + ": " + 
-                                peerState + " -> INCONSISTENT");
-                    }
                 }
                 else
                 {
                     if (peerState != PeerState.SYNCHRONIZED)
-                    {
                         peerRecord.setPeerState(PeerState.SYNCHRONIZED);
-                        if (Info.DEBUG)
-                            System.out.println(TAG + senderID + ": " + 
-                                peerState + " -> SYNCHRONIZED");
-                    }
                 }
             }
         }
+
+        if (unearthed != null && myDispatcher.hasListeners())
+        {
+            Database db = unearthed.getPeerDatabase();
+            publish(PeerEvent.replicaUpdated(senderID, new String[0], 
+                db.getData(), db.getDatabaseSequenceNo()));
+        }
+    }
+
+    /**
+     * commitPeerDatabase - called by ListReceiver once all the LIST parts of 
+     * a version have been written into the pending database of peerRecord.
+     * @return false if nothing was committed, e.g. the peer expired during 
+     * the transfer (peerRecord is then no longer in the peer table).
+     */
+    public static boolean commitPeerDatabase(PeerRecord peerRecord)
+    {
+        synchronized (lock)
+        {
+            String peerID = peerRecord.getPeerID();
+            if (getPeerRecord(peerID) != peerRecord || 
+                !peerRecord.isPendingComplete())
+                return false;
+
+            String[] oldData = replicaBefore(peerRecord);
+            peerRecord.commitPendingDatabase();
+            String[] newData = peerRecord.getPeerData();
+            stored(peerRecord);
+            if (oldData != null)
+                publish(PeerEvent.replicaUpdated(peerID, oldData, newData,
+                    peerRecord.getPeerSequenceNo()));
+            return true;
+        }
+    }
+
+    /**
+     * stored - a new replica was stored in peerRecord. Must be called with 
+     * lock held.
+     */
+    private static void stored(PeerRecord peerRecord)
+    {
+        if (myReplicaStore == null)
+            myIndex.update(peerRecord.getPeerID(), peerRecord.getPeerData());
+        else
+            myReplicaStore.stored(peerRecord);
     }
 
     public static void updatePeerDatabase(String peerID, String[] newData, 
@@ -166,7 +779,7 @@ public class Info
         {
             PeerRecord peerRecord = getPeerRecord(peerID);
             if (peerRecord != null)
-                peerRecord.updatePeerDatabase(newData, newSequenceNo);
+                replaceReplica(peerRecord, newData, newSequenceNo);
         }   
     }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+import java.util.HashMap;
+
+/**
+ * A LazyReplica holds only the parts of a peer's database the application
+ * actually reads (cf. PeerRecord.getLazyReplica): a read of parts not yet
+ * cached sends a range request (a SYN carrying a part range, cf. SynMessage)
+ * for them and the READ_AHEAD following parts, and a read close to the end
+ * of what is cached fetches the next READ_AHEAD parts in the background.
+ *
+ * The cached parts are those of the version the peer announces in its
+ * HELLOs: they are dropped as soon as it announces another one. They are
+ * filled in by ListReceiver, from the LISTs of the peer addressed to us (or
+ * overheard).
+ */
+public class LazyReplica
+{
+    /**
+     * How many parts are fetched beyond those read.
+     */
+    private final static int  READ_AHEAD    = 16;
+
+    /**
+     * A part requested and not received is requested again after
+     * RETRY_TIMEOUT ms. A blocking read gives up after READ_TIMEOUT ms.
+     */
+    private final static long RETRY_TIMEOUT = 6000;
+    private final static long READ_TIMEOUT  = 15000;
+
+    private static volatile MuxDemuxSimple myMuxDemux = null;
+
+    private final PeerRecord peerRecord;
+
+    /**
+     * The version cached (-1 if none yet) and its parts, null until the
+     * first of them (which tells TotalParts) arrives.
+     * Guarded by the LazyReplica.
+     */
+    private int      sequenceNo = -1;
+    private String[] parts      = null;
+
+    /**
+     * Dictionnary associating the part# requested and not received yet to
+     * when they were requested. Guarded by the LazyReplica.
+     */
+    private HashMap<Integer, Long> requested = new HashMap<Integer, Long>();
+
+    LazyReplica(PeerRecord peerRecord)
+    {
+        this.peerRecord = peerRecord;
+    }
+
+    /**
+     * setMuxDemux - how the range requests are sent (cf. ListReceiver).
+     */
+    static void setMuxDemux(MuxDemuxSimple md)
+    {
+        myMuxDemux = md;
+    }
+
+    /**
+     * getTotalParts -
+     * @return the number of parts of the version cached, -1 if unknown yet.
+     */
+    public synchronized int getTotalParts()
+    {
+        this.checkVersion();
+        return this.parts == null ? -1 : this.parts.length;
+    }
+
+    /**
+     * tryRead - never blocks.
+     * @return the parts [first, first+count[ (fewer if the database is
+     *         shorter), null if they are not all cached yet: they are then
+     *         requested.
+     */
+    public synchronized String[] tryRead(int first, int count)
+    {
+        this.checkVersion();
+        String[] res = this.cached(first, count);
+        if (res == null)
+        {
+            Metrics.lazyMisses.increment();
+            this.request(first, count + READ_AHEAD);
+            return null;
+        }
+
+        Metrics.lazyHits.increment();
+        // read-ahead of the next parts
+        int next = first + count;
+        if (this.cached(next, READ_AHEAD / 2) == null)
+            this.request(next, READ_AHEAD);
+        return res;
+    }
+
+    /**
+     * read - same as tryRead, but waits for the missing parts.
+     * @return null if they didn't arrive within READ_TIMEOUT.
+     */
+    public synchronized String[] read(int first, int count)
+        throws InterruptedException
+    {
+        long deadline = Clock.currentTimeMillis() + READ_TIMEOUT;
+        String[] res = this.tryRead(first, count);
+        while (res == null && Clock.currentTimeMillis() < deadline)
+        {
+            // woken up by offer, else polls for the retries
+            this.wait(100);
+            this.checkVersion();
+            res = this.cached(first, count);
+            if (res == null)
+                this.request(first, count + READ_AHEAD);
+        }
+        return res;
+    }
+
+    /**
+     * offer - a LIST part of the peer. Only the parts of the version it
+     * announces are kept.
+     * @return false if it is not kept.
+     */
+    public synchronized boolean offer(int sequenceNo, int totalParts,
+                                        int partNo, String data)
+    {
+        this.checkVersion();
+        if (sequenceNo != this.peerRecord.getAdvertisedSequenceNo() ||
+            partNo < 0 || partNo >= totalParts)
+            return false;
+
+        if (this.parts == null || this.sequenceNo != sequenceNo ||
+            this.parts.length != totalParts)
+        {
+            this.sequenceNo = sequenceNo;
+            this.parts      = new String[totalParts];
+            this.requested.keySet().removeIf(i -> i >= totalParts);
+        }
+        this.requested.remove(partNo);
+        if (this.parts[partNo] != null)
+            return false;
+
+        this.parts[partNo] = data;
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * checkVersion - drops the cache if the peer announced another version.
+     */
+    private void checkVersion()
+    {
+        int advertised = this.peerRecord.getAdvertisedSequenceNo();
+        if (this.parts != null && advertised != this.sequenceNo)
+        {
+            this.sequenceNo = -1;
+            this.parts      = null;
+            this.requested.clear();
+        }
+    }
+
+    /**
+     * cached -
+     * @return the parts [first, first+count[ (fewer if the database is
+     *         shorter), null if some of them are not cached.
+     */
+    private String[] cached(int first, int count)
+    {
+        if (this.parts == null)
+            return null;
+
+        int last = Math.min(first + count, this.parts.length);
+        String[] res = new String[Math.max(0, last - first)];
+        for (int i=0; i<res.length; i++)
+        {
+            res[i] = this.parts[first + i];
+            if (res[i] == null)
+                return null;
+        }
+        return res;
+    }
+
+    /**
+     * request - sends a range request for each run of the parts
+     * [first, first+count[ neither cached nor recently requested.
+     */
+    private void request(int first, int count)
+    {
+        long now  = Clock.currentTimeMillis();
+        int  last = first + count;
+        if (this.parts != null)
+            last = Math.min(last, this.parts.length);
+
+        int runStart = -1;
+        for (int i=first; i<=last; i++)
+        {
+            boolean wanted = i < last &&
+                (this.parts == null || this.parts[i] == null);
+            Long requestedAt = this.requested.get(i);
+            if (wanted && requestedAt != null &&
+                now - requestedAt < RETRY_TIMEOUT)
+                wanted = false;
+
+            if (wanted && runStart < 0)
+                runStart = i;
+            else if (!wanted && runStart >= 0)
+            {
+                this.send(runStart, i - runStart, now);
+                runStart = -1;
+            }
+        }
+    }
+
+    private void send(int first, int count, long now)
+    {
+        MuxDemuxSimple md = myMuxDemux;
+        String peerID = this.peerRecord.getPeerID();
+        if (md == null || !Info.inPeers(peerID))
+            return;
+
+        SynMessage sm = new SynMessage(Info.getMyID(), peerID,
+            this.peerRecord.getAdvertisedSequenceNo(), first, count);
+        md.send(sm.getSynMessageAsEncodedString());
+        Metrics.rangeRequests.increment();
+        Flight.synSent(sm, this.requested.containsKey(first));
+        for (int i=first; i<first+count; i++)
+            this.requested.put(i, now);
+    }
+}
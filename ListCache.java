@@ -0,0 +1,61 @@
+/**
+ * ListCache holds all the LIST messages of one version of my database, 
+ * encoded once and reused for every SYN asking for this version (and every
+ * retransmission), whoever the requester is.
+ *
+ * Only the peerID field depends on the requester: each part is cached as 
+ *      ;sequence#;TotalParts;part#;data;
+ * and getPart() prepends "LIST;senderID;" + peerID (cf. ListMessage).
+ *
+ * Info builds it on first use and drops it whenever updateMyDatabase() 
+ * changes the version.
+ */
+public class ListCache
+{
+    final private String   senderID;
+    final private int      sequenceNo;
+    final private String   prefix;
+    final private String[] suffixes;
+
+    public ListCache(String senderID, int sequenceNo, String[] data)
+    {
+        this.senderID   = senderID;
+        this.sequenceNo = sequenceNo;
+        this.prefix     = "LIST;" + senderID + ";";
+        this.suffixes   = new String[data.length];
+
+        for (int i=0; i<data.length; i++)
+        {
+            // the encoding (and checks) of ListMessage, with an empty peerID
+            ListMessage lm = new ListMessage(senderID, "", sequenceNo, 
+                data.length, i, data[i]);
+            this.suffixes[i] = lm.getListMessageAsEncodedString()
+                .substring(this.prefix.length());
+        }
+        Metrics.listCacheBuilds.increment();
+    }
+
+    public String getSenderID()
+    {
+        return this.senderID;
+    }
+
+    public int getSequenceNo()
+    {
+        return this.sequenceNo;
+    }
+
+    public int getTotalParts()
+    {
+        return this.suffixes.length;
+    }
+
+    /**
+     * getPart - 
+     * @return the encoded LIST message of part# partNo addressed to peerID.
+     */
+    public String getPart(int partNo, String peerID)
+    {
+        return this.prefix + peerID + this.suffixes[partNo];
+    }
+}
\ No newline at end of file
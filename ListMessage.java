@@ -7,6 +7,8 @@
  *      A-Z a-z 0-9 (only), and which represents the symbolic name (as in: 
  *      JuansFileServer) of the sending machine.
  *    - peerID is the senderID of the peer, to which this message is addressed
+ *      or, for a transfer serving several SYNs at once (cf. SynReceiver), 
+ *      the comma-separated senderIDs of the group of peers.
  *    - sequence#  is an integer. Note that this is not a message sequence 
  *      number, but will be used for indicating the “state evolution” of the 
  *      sender, in future TDs.
@@ -50,7 +52,7 @@ public class ListMessage
 
         this.senderID = tokens[1];
 
-        if (!this.senderID.matches("\\w+") || this.senderID.length() > 16)
+        if (!Tokenizer.isWord(this.senderID))
         {
             e = "should be a word (senderID=" + tokens[1] +")";
             throw new IllegalArgumentException(e);
@@ -86,7 +88,7 @@ public class ListMessage
     {
         String e;
 
-        if (!senderID.matches("\\w+") || senderID.length() > 16)
+        if (!Tokenizer.isWord(senderID))
         {
             e = "should be a word (senderID=" + senderID +")";
             throw new IllegalArgumentException(e);
@@ -155,6 +157,24 @@ public class ListMessage
         return this.peerID;
     }
 
+    /**
+     * isAddressedTo - whether peerID is (or is part of the group of) the 
+     * peer(s) to which this message is addressed.
+     */
+    public boolean isAddressedTo(String peerID)
+    {
+        if (this.peerID.equals(peerID))
+            return true;
+        if (this.peerID.indexOf(',') < 0)
+            return false;
+        for (String member : this.peerID.split(","))
+        {
+            if (member.equals(peerID))
+                return true;
+        }
+        return false;
+    }
+
     public int getSequenceNo()
     {
         return this.sequenceNo;
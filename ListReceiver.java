@@ -1,42 +1,80 @@
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /** 
- * - Ignore the messages not destinated to us.
- * - Fill in the data array at the partNo position.
+ * - Ignore the messages not destinated to us (alone or within a group of 
+ *   peers, cf. SynReceiver), unless overhearing is enabled:
+ *   a transfer addressed to another peer is then assembled too when it 
+ *   carries the sequence# the sender currently announces and we are not 
+ *   SYNCHRONIZED with it (one broadcast transfer can satisfy many nodes).
+ * - Write the data into the pending database of the PeerRecord at the 
+ *   partNo position (cf. PeerRecord.applyPart), so that the progress of the
+ *   transfer is visible and no other copy of the database is kept.
  * - Check if all messages are received.
- * - Update the corresponding database in PeerTable.
+ * - Publish the pending database as the peer's database (cf. 
+ *   Info.commitPeerDatabase).
+ * - When the databases are only fetched on demand (cf. Info.isLazy), the 
+ *   parts go to the LazyReplica of the peer instead, if the application 
+ *   reads it.
+ * 
+ * LISTs are processed by PartitionedWorkers, partitioned by senderID.
  */
 class ListReceiver implements SimpleMessageHandler, Runnable
 {
-    private static String TAG = "ListReceiver  - ";
-    private SynchronizedQueue incoming = new SynchronizedQueue(20);
+    private PartitionedWorkers<String> workers = 
+        new PartitionedWorkers<>("ListReceiver.incoming", this::process);
     private MuxDemuxSimple myMuxDemux = null;
+    private boolean overhearing = false;
     
     /**
-     * Dictionnary associating peerID to its database which we will fill in
-     * little by little. At the end (indicating by "lackPartsNo" below), we can
-     * then update the corresponding database (in PeerRecord which is in our 
-     * PeerTable).
+     * setOverhearing - whether to also assemble the LIST transfers addressed
+     * to other peers (cf. above).
      */
-    private HashMap<String, String[]> data = new HashMap<>();
-
-    /**
-     * Dictionnary associating peerID to the number of lacking parts.
-     * Every value is initiating to TotalParts corresponding to the peer.
-     * When it reach 0 then we update the corresponding database.
-     */
-    private HashMap<String, Integer> lackPartsNo = new HashMap<>();
+    public void setOverhearing(boolean overhearing)
+    {
+        this.overhearing = overhearing;
+    }
 
     public void setMuxDemux(MuxDemuxSimple md)
     {
         myMuxDemux = md;
+        LazyReplica.setMuxDemux(md);
     }
 
     public void handleMessage(String recved, String source)
     {
+        if (!recved.startsWith("LIST;"))
+            return;
+
         try
         {
-            incoming.enqueue(recved);
+            workers.dispatch(PartitionedWorkers.senderOf(recved), recved);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+	
+    public void handleBatch(List<String> recved, List<String> senderIPs)
+    {
+        ArrayList<String> senderIDs = new ArrayList<String>();
+        ArrayList<String> msgs      = new ArrayList<String>();
+        for (int i=0; i<recved.size(); i++)
+        {
+            if (!recved.get(i).startsWith("LIST;"))
+                continue;
+            senderIDs.add(PartitionedWorkers.senderOf(recved.get(i)));
+            msgs.add(recved.get(i));
+        }
+        if (msgs.isEmpty())
+            return;
+
+        try
+        {
+            workers.dispatchAll(senderIDs, msgs);
         }
         catch (InterruptedException e)
         {
@@ -48,21 +86,21 @@ class ListReceiver implements SimpleMessageHandler, Runnable
 	
     public void run()
     {
-        while (!Thread.interrupted())
+        workers.run();
+    }
+
+    /**
+     * process - the LIST messages destinated to us (or overheard) are grouped
+     * into runs of consecutive parts from the same sender, and each run is 
+     * applied with a single access to PeerTable.
+     */
+    private void process(int partition, List<String> batch)
+    {
+        ArrayList<ListMessage> run = new ArrayList<ListMessage>();
+        for (String msg : batch)
         {
-            String msg;
-            try
-            {
-                msg = incoming.dequeue();
-            }
-            catch (InterruptedException e)
-            {
-                System.err.println(e);
-                Thread.currentThread().interrupt();
-                return;
-            }
-            
             ListMessage lm;
+            Flight.MessageDecoded decoding = Flight.decoding();
             try
             {
                 lm = new ListMessage(msg);
@@ -70,63 +108,108 @@ class ListReceiver implements SimpleMessageHandler, Runnable
             catch (IllegalArgumentException e)
             {
                 // Not a LIST message (perhaps HELLO, SYN, etc...)
+                Flight.decoded(decoding, msg, false);
                 continue;
             }
+            Flight.decoded(decoding, msg, true);
 
-            String destID     = lm.getPeerID();
-            String senderID   = lm.getSenderID();
-            int    sequenceNo = lm.getSequenceNo();
-            int    totalParts = lm.getTotalParts();
+            if (!this.overhearing && !lm.isAddressedTo(Info.getMyID()))
+                continue;
 
-            if (destID.equals(Info.getMyID()))
+            if (!run.isEmpty() && 
+                !run.get(0).getSenderID().equals(lm.getSenderID()))
             {
-                PeerRecord peerRecord     = Info.getPeerRecord(senderID);
-                int        peerSequenceNo = peerRecord.getPeerSequenceNo();
-                PeerState  peerState      = peerRecord.getPeerState();
-            
-                if (peerState == PeerState.SYNCHRONIZED)
-                {
-                    System.err.println(TAG + "no need to synchronize...");
-                    continue;
-                }
-            
-                if (peerSequenceNo == sequenceNo)
-                {
-                    System.err.println(TAG + "no need to synchronize...");
-                    peerRecord.setPeerState(PeerState.SYNCHRONIZED);
-
-                    if (Info.DEBUG)
-                        System.out.println(TAG + senderID + ": " + 
-                            peerState + " -> SYNCHRONIZED");
-                    continue;
-                }
-                
-                if (this.data.get(senderID) == null || 
-                    this.data.get(senderID).length != totalParts)
-                {
-                    this.data.put(senderID, new String[totalParts]);
-                    this.lackPartsNo.put(senderID, totalParts);
-                }
-                
-                String[] peerDatabase = this.data.get(senderID);
-                
-                peerDatabase[lm.getPartNo()] = lm.getData();
-                int lack = this.lackPartsNo.get(senderID);
-                lack--;
-                this.lackPartsNo.put(senderID, lack);
-
-                if (lack == 0) // Finished 
-                {
-                    String[] newData = this.data.get(senderID);
-                    Info.updatePeerDatabase(senderID, newData, sequenceNo);
-                    
-                    peerRecord.setPeerState(PeerState.SYNCHRONIZED);
-
-                    if (Info.DEBUG)
-                        System.out.println(TAG + senderID + ": " + 
-                            peerState + " -> SYNCHRONIZED");
-                }
+                this.applyRun(partition, run);
+                run.clear();
             }
+            run.add(lm);
+        }
+
+        if (!run.isEmpty())
+            this.applyRun(partition, run);
+    }
+
+    private void applyRun(int partition, List<ListMessage> run)
+    {
+        String     senderID   = run.get(0).getSenderID();
+        PeerRecord peerRecord = Info.getPeerRecord(senderID);
+        if (peerRecord == null) // not heard (or expired) yet
+            return;
+
+        for (ListMessage lm : run)
+        {
+            try
+            {
+                this.applyList(peerRecord, lm);
+            }
+            catch (RuntimeException e)
+            {
+                workers.failed(partition, e);
+            }
+        }
+    }
+
+    /**
+     * applyList - one LIST of the run of peerRecord.
+     */
+    private void applyList(PeerRecord peerRecord, ListMessage lm)
+    {
+        String senderID   = lm.getSenderID();
+        int    sequenceNo = lm.getSequenceNo();
+        int    totalParts = lm.getTotalParts();
+
+        if (Info.isLazy())
+        {
+            LazyReplica lazyReplica = peerRecord.peekLazyReplica();
+            if (lazyReplica != null && lazyReplica.offer(sequenceNo, 
+                    totalParts, lm.getPartNo(), lm.getData()))
+                Metrics.listPartsReceived.increment();
+            return;
+        }
+
+        int       peerSequenceNo = peerRecord.getPeerSequenceNo();
+        PeerState peerState      = peerRecord.getPeerState();
+
+        boolean overheard = !lm.isAddressedTo(Info.getMyID());
+        if (overheard && 
+            (peerState == PeerState.SYNCHRONIZED ||
+             peerSequenceNo == sequenceNo ||
+             peerRecord.getAdvertisedSequenceNo() != sequenceNo))
+            return;
+    
+        if (peerState == PeerState.SYNCHRONIZED)
+        {
+            Trace.log(Trace.Event.LIST_IGNORED, Trace.symbol(senderID), 
+                sequenceNo);
+            return;
+        }
+    
+        if (peerSequenceNo == sequenceNo)
+        {
+            Trace.log(Trace.Event.LIST_IGNORED, Trace.symbol(senderID), 
+                sequenceNo);
+            peerRecord.setPeerState(PeerState.SYNCHRONIZED);
+            return;
+        }
+        
+        boolean applied = peerRecord.applyPart(sequenceNo, totalParts, 
+            lm.getPartNo(), lm.getData(), overheard);
+        if (overheard)
+            Metrics.listPartsOverheard.increment();
+        
+        // the same part may be received twice (SYN retry, overhearing)
+        if (!applied)
+            return;
+
+        Metrics.listPartsReceived.increment();
+
+        // Finished, unless the peer expired meanwhile
+        if (peerRecord.isPendingComplete() && 
+            Info.commitPeerDatabase(peerRecord))
+        {
+            Metrics.syncsCompleted.increment();
+            
+            peerRecord.setPeerState(PeerState.SYNCHRONIZED);
         }
     }
-}
\ No newline at end of file
+}
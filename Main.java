@@ -1,36 +1,93 @@
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Creates a broadcast socket on port 4242 in the local network and launch all
  * the handlers:
- * HelloSender, HelloReceiver, SynReceiver, ListReceiver, DubugReceiver
+ * HelloSender, HelloReceiver, SynReceiver, ListReceiver, Bootstrap, Gossip
  * We update our database every 5 seconds.
  */
 public class Main
 {
     public static void main(String[] args)
     {
-        DatagramSocket socket;
+        Transport transport;
         try
         {
-            socket = new DatagramSocket(4242);
-            socket.setBroadcast(true);
+            transport = UdpTransport.open(4242);
         } 
-        catch (SocketException e)
+        catch (IOException e)
         {
             System.err.println(e);
             return;
         }
         
-        SimpleMessageHandler[] handlers = new SimpleMessageHandler[5];
+        SimpleMessageHandler[] handlers = new SimpleMessageHandler[6];
         handlers[0] = new HelloSender();
         handlers[1] = new HelloReceiver();
-        handlers[2] = new SynReceiver();
-        handlers[3] = new ListReceiver();
-        handlers[4] = new DebugReceiver();
+        // -Dsyn.window=ms: SYNs received within the window share a transfer
+        // addressed to the group of requesters (not understood by other 
+        // implementations of the protocol, hence off by default)
+        SynReceiver synReceiver = new SynReceiver();
+        synReceiver.setCoalescingWindow(Long.getLong("syn.window", 0));
+        handlers[2] = synReceiver;
+        // -Doverhear=true: also assemble the LIST transfers to other peers
+        ListReceiver listReceiver = new ListReceiver();
+        listReceiver.setOverhearing(Boolean.getBoolean("overhear"));
+        handlers[3] = listReceiver;
+        // -Dbootstrap=true: fetch all the replicas of a neighbour at startup
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.setActive(Boolean.getBoolean("bootstrap"));
+        handlers[4] = bootstrap;
+        // -Dgossip=true: relay the replicas we hold to the other peers
+        Gossip gossip = new Gossip();
+        gossip.setActive(Boolean.getBoolean("gossip"));
+        handlers[5] = gossip;
 
-        MuxDemuxSimple dm = new MuxDemuxSimple(handlers, socket);
+        // -Dreplica.budget=bytes: spill the least recently used replicas 
+        // beyond the budget into -Dreplica.dir (Info.getIndex isn't 
+        // available then)
+        long budget = Long.getLong("replica.budget", 0);
+        if (budget > 0)
+            Info.setReplicaBudget(budget, new File(System.getProperty(
+                "replica.dir", System.getProperty("java.io.tmpdir") + 
+                File.separator + "replicas-" + Info.getMyID())));
+
+        // -Dlazy=true: don't replicate the databases of the peers, only 
+        // fetch the parts read (cf. PeerRecord.getLazyReplica)
+        Info.setLazy(Boolean.getBoolean("lazy"));
+
+        // -Dtombstone.size=N, -Dtombstone.grace=ms: keep the replicas of at
+        // most N expired peers (none by default), restored if heard again 
+        // within the grace
+        Info.setTombstones(
+            Integer.getInteger("tombstone.size", Tombstones.DEFAULT_CAPACITY),
+            Long.getLong("tombstone.grace", Tombstones.DEFAULT_GRACE));
+        // -Dphi.threshold=PHI: suspicion level beyond which peers expire
+        Info.setPhiThreshold(Double.parseDouble(System.getProperty(
+            "phi.threshold", String.valueOf(FailureDetector.DEFAULT_THRESHOLD))));
+
+        MuxDemuxSimple dm = new MuxDemuxSimple(handlers, transport);
+        // -Dcoalesce=true: pack the outgoing messages into MULTI datagrams
+        dm.setCoalescing(Boolean.getBoolean("coalesce"));
+        // -Doutbound=strict: strict priority of HELLO > SYN > LIST
+        dm.setStrictPriority("strict".equals(System.getProperty("outbound")));
+        // -Dadmission.rate=N: at most N datagrams/s per source (0: no limit),
+        // with bursts of -Dadmission.burst datagrams. Off by default: the 
+        // LIST transfers of a large database are sent unpaced, and every
+        // part counts against the bucket of its sender.
+        dm.setAdmission(
+            Double.parseDouble(System.getProperty("admission.rate", "0")),
+            Double.parseDouble(System.getProperty("admission.burst", "2000")));
+        Metrics.registerMBeans();
+        Trace.registerMBean();
+
+        // -Dtrace.level=ERROR|INFO|DEBUG, -Dtrace.dump=false to only keep 
+        // the records in memory (cf. the Trace MBean)
+        Trace.setLevel(Trace.Level.valueOf(
+            System.getProperty("trace.level", "DEBUG")));
+        if (!"false".equals(System.getProperty("trace.dump")))
+            Trace.startDumper(System.out, 500);
         
         for (int i=0; i<handlers.length; i++)
         {
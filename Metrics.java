@@ -0,0 +1,345 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The "static" class Metrics gathers the counters and histograms of the 
+ * protocol and publishes them as MBeans (under the "PeerDiscover" domain) so
+ * that they can be read with jconsole, VisualVM, etc.
+ *
+ * Counters are LongAdders (striped, so that threads incrementing the same 
+ * counter don't contend) and histograms are lock-free: instrumenting the 
+ * message path costs a few atomic operations.
+ */
+public class Metrics implements MetricsMBean
+{
+    private final static String TAG = "Metrics       - ";
+    private final static String DOMAIN = "PeerDiscover";
+
+    /**
+     * MuxDemuxSimple
+     */
+    public final static LongAdder datagramsReceived   = new LongAdder();
+    public final static LongAdder bytesReceived       = new LongAdder();
+    public final static LongAdder datagramsSent       = new LongAdder();
+    public final static LongAdder messagesSent        = new LongAdder();
+    public final static LongAdder bytesSent           = new LongAdder();
+    public final static LongAdder unparsableDatagrams = new LongAdder();
+    public final static LongAdder droppedDatagrams    = new LongAdder();
+    public final static LongAdder helloViewsCreated   = new LongAdder();
+
+    /**
+     * Admission (load shed before decoding)
+     */
+    public final static LongAdder rateLimitedDatagrams = new LongAdder();
+    public final static LongAdder echoedMessages       = new LongAdder();
+    public final static LongAdder unknownMessages      = new LongAdder();
+
+    /**
+     * HelloSender, HelloReceiver, SynReceiver, ListReceiver
+     */
+    public final static LongAdder helloBuilds         = new LongAdder();
+    public final static LongAdder peersExpired        = new LongAdder();
+    public final static LongAdder synSent             = new LongAdder();
+    public final static LongAdder synRetries          = new LongAdder();
+    public final static LongAdder synSuppressed       = new LongAdder();
+    public final static LongAdder synCoalesced        = new LongAdder();
+    public final static LongAdder listPartsSent       = new LongAdder();
+    public final static LongAdder listCacheBuilds     = new LongAdder();
+    public final static LongAdder listCacheHits       = new LongAdder();
+    public final static LongAdder listPartsReceived   = new LongAdder();
+    public final static LongAdder listPartsOverheard  = new LongAdder();
+    public final static LongAdder syncsCompleted      = new LongAdder();
+
+    /**
+     * LazyReplica, SynReceiver (range requests)
+     */
+    public final static LongAdder rangeRequests       = new LongAdder();
+    public final static LongAdder rangesServed        = new LongAdder();
+    public final static LongAdder lazyHits            = new LongAdder();
+    public final static LongAdder lazyMisses          = new LongAdder();
+
+    /**
+     * Bootstrap
+     */
+    public final static LongAdder bootRequests        = new LongAdder();
+    public final static LongAdder snapPartsSent       = new LongAdder();
+    public final static LongAdder snapPartsReceived   = new LongAdder();
+    public final static LongAdder replicasAdopted     = new LongAdder();
+
+    /**
+     * ReplicaStore
+     */
+    public final static LongAdder replicasSpilled     = new LongAdder();
+    public final static LongAdder replicasReloaded    = new LongAdder();
+
+    /**
+     * Tombstones (replicas of the expired peers)
+     */
+    public final static LongAdder tombstonesKept      = new LongAdder();
+    public final static LongAdder tombstonesRestored  = new LongAdder();
+
+    /**
+     * Gossip
+     */
+    public final static LongAdder digestsSent         = new LongAdder();
+    public final static LongAdder pullsSent           = new LongAdder();
+    public final static LongAdder pullsServed         = new LongAdder();
+
+    /**
+     * EventDispatcher
+     */
+    public final static LongAdder eventsDropped       = new LongAdder();
+
+    /**
+     * PartitionedWorkers
+     */
+    public final static LongAdder workerFailures      = new LongAdder();
+
+    /**
+     * Time (ms) a peer takes to go from HEARD/INCONSISTENT to SYNCHRONIZED.
+     */
+    public final static Histogram syncTime = new Histogram();
+
+    private static boolean registered = false;
+
+    /**
+     * private constructor, only instantiated once to be published.
+     */
+    private Metrics(){};
+
+    /**
+     * registerMBeans - publishes the counters and the histograms. 
+     * Called once by Main.
+     */
+    public static synchronized void registerMBeans()
+    {
+        if (registered)
+            return;
+        registered = true;
+
+        register("Metrics", "protocol", new Metrics());
+        register("Histogram", "syncTime", syncTime);
+    }
+
+    /**
+     * register - publishes any other MBean of ours (e.g. a queue).
+     */
+    public static void register(String type, String name, Object mbean)
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            ObjectName objectName = new ObjectName(DOMAIN + ":node=" + 
+                Info.getMyID() + ",type=" + type + ",name=" + name);
+            if (!server.isRegistered(objectName))
+                server.registerMBean(mbean, objectName);
+        }
+        catch (JMException e)
+        {
+            System.err.println(TAG + e);
+        }
+    }
+
+    public long getDatagramsReceived()
+    {
+        return datagramsReceived.sum();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.sum();
+    }
+
+    public long getDatagramsSent()
+    {
+        return datagramsSent.sum();
+    }
+
+    public long getMessagesSent()
+    {
+        return messagesSent.sum();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.sum();
+    }
+
+    public long getUnparsableDatagrams()
+    {
+        return unparsableDatagrams.sum();
+    }
+
+    public long getDroppedDatagrams()
+    {
+        return droppedDatagrams.sum();
+    }
+
+    public long getHelloViewsCreated()
+    {
+        return helloViewsCreated.sum();
+    }
+
+    public long getRateLimitedDatagrams()
+    {
+        return rateLimitedDatagrams.sum();
+    }
+
+    public long getEchoedMessages()
+    {
+        return echoedMessages.sum();
+    }
+
+    public long getUnknownMessages()
+    {
+        return unknownMessages.sum();
+    }
+
+    public long getHelloBuilds()
+    {
+        return helloBuilds.sum();
+    }
+
+    public long getPeersExpired()
+    {
+        return peersExpired.sum();
+    }
+
+    public long getSynSent()
+    {
+        return synSent.sum();
+    }
+
+    public long getSynRetries()
+    {
+        return synRetries.sum();
+    }
+
+    public long getSynSuppressed()
+    {
+        return synSuppressed.sum();
+    }
+
+    public long getSynCoalesced()
+    {
+        return synCoalesced.sum();
+    }
+
+    public long getListPartsSent()
+    {
+        return listPartsSent.sum();
+    }
+
+    public long getListCacheBuilds()
+    {
+        return listCacheBuilds.sum();
+    }
+
+    public long getListCacheHits()
+    {
+        return listCacheHits.sum();
+    }
+
+    public long getListPartsReceived()
+    {
+        return listPartsReceived.sum();
+    }
+
+    public long getListPartsOverheard()
+    {
+        return listPartsOverheard.sum();
+    }
+
+    public long getSyncsCompleted()
+    {
+        return syncsCompleted.sum();
+    }
+
+    public long getRangeRequests()
+    {
+        return rangeRequests.sum();
+    }
+
+    public long getRangesServed()
+    {
+        return rangesServed.sum();
+    }
+
+    public long getLazyHits()
+    {
+        return lazyHits.sum();
+    }
+
+    public long getLazyMisses()
+    {
+        return lazyMisses.sum();
+    }
+
+    public long getBootRequests()
+    {
+        return bootRequests.sum();
+    }
+
+    public long getSnapPartsSent()
+    {
+        return snapPartsSent.sum();
+    }
+
+    public long getSnapPartsReceived()
+    {
+        return snapPartsReceived.sum();
+    }
+
+    public long getReplicasAdopted()
+    {
+        return replicasAdopted.sum();
+    }
+
+    public long getReplicasSpilled()
+    {
+        return replicasSpilled.sum();
+    }
+
+    public long getReplicasReloaded()
+    {
+        return replicasReloaded.sum();
+    }
+
+    public long getTombstonesKept()
+    {
+        return tombstonesKept.sum();
+    }
+
+    public long getTombstonesRestored()
+    {
+        return tombstonesRestored.sum();
+    }
+
+    public long getDigestsSent()
+    {
+        return digestsSent.sum();
+    }
+
+    public long getPullsSent()
+    {
+        return pullsSent.sum();
+    }
+
+    public long getPullsServed()
+    {
+        return pullsServed.sum();
+    }
+
+    public long getEventsDropped()
+    {
+        return eventsDropped.sum();
+    }
+
+    public long getWorkerFailures()
+    {
+        return workerFailures.sum();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+/**
+ * JMX view of the protocol counters (cf. Metrics).
+ */
+public interface MetricsMBean
+{
+    public long getDatagramsReceived();
+    public long getBytesReceived();
+    public long getDatagramsSent();
+    public long getMessagesSent();
+    public long getBytesSent();
+    public long getUnparsableDatagrams();
+    public long getDroppedDatagrams();
+    public long getHelloViewsCreated();
+    public long getRateLimitedDatagrams();
+    public long getEchoedMessages();
+    public long getUnknownMessages();
+    public long getHelloBuilds();
+    public long getPeersExpired();
+    public long getSynSent();
+    public long getSynRetries();
+    public long getSynSuppressed();
+    public long getSynCoalesced();
+    public long getListPartsSent();
+    public long getListCacheBuilds();
+    public long getListCacheHits();
+    public long getListPartsReceived();
+    public long getListPartsOverheard();
+    public long getSyncsCompleted();
+    public long getRangeRequests();
+    public long getRangesServed();
+    public long getLazyHits();
+    public long getLazyMisses();
+    public long getBootRequests();
+    public long getSnapPartsSent();
+    public long getSnapPartsReceived();
+    public long getReplicasAdopted();
+    public long getReplicasSpilled();
+    public long getReplicasReloaded();
+    public long getTombstonesKept();
+    public long getTombstonesRestored();
+    public long getDigestsSent();
+    public long getPullsSent();
+    public long getPullsServed();
+    public long getEventsDropped();
+    public long getWorkerFailures();
+}
\ No newline at end of file
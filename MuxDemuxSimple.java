@@ -1,88 +1,478 @@
-import java.net.DatagramSocket;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 class MuxDemuxSimple implements Runnable
 {
-    private DatagramSocket mySocket = null;
-    private BufferedReader in;
+    /**
+     * Maximum number of datagrams drained and dispatched at once.
+     */
+    private final static int MAX_BATCH = 64;
+
+    /**
+     * When coalescing is enabled, the messages drained by the sender thread 
+     * are packed into datagrams of at most MAX_DATAGRAM bytes (the receive 
+     * buffer is 2048 bytes) formatted as follows:
+     *      MULTI;N;length1;...;lengthN;message1message2...messageN
+     * where length? is the length in bytes of message?. A message alone is 
+     * sent as is. Receivers always accept MULTI datagrams, but peers running 
+     * another implementation of the protocol don't: coalescing is off by 
+     * default.
+     */
+    private final static int MAX_DATAGRAM = 2000;
+    private final static byte[] MULTI = "MULTI;".getBytes();
+    private final static byte[] HELLO = "HELLO;".getBytes();
+    private final static byte[] SYN   = "SYN;".getBytes();
+    private final static byte[] LIST  = "LIST;".getBytes();
+
+    /**
+     * The types of the DATAGRAM_RECEIVED trace records.
+     */
+    private final static long HELLO_SYMBOL = Trace.symbol("HELLO");
+    private final static long SYN_SYMBOL   = Trace.symbol("SYN");
+    private final static long LIST_SYMBOL  = Trace.symbol("LIST");
+    private final static long OTHER        = Trace.symbol("unknown datagram");
+
+    private boolean coalescing = false;
+
+    /**
+     * Per-source rate limit (datagrams/s, 0 for none) and burst of the 
+     * Admission stage of the receive loop.
+     */
+    private double admissionRate  = 0;
+    private double admissionBurst = 1;
+
+    private Transport myTransport = null;
     private SimpleMessageHandler[] myMessageHandlers;
-    private SynchronizedQueue outgoing = new SynchronizedQueue(20);
+    private OutboundQueue outgoing = 
+        new OutboundQueue("MuxDemuxSimple.outgoing");
 
     private Thread senderThread;
     private Thread receiverThread;
 
-    MuxDemuxSimple (SimpleMessageHandler[] h, DatagramSocket s)
+    MuxDemuxSimple (SimpleMessageHandler[] h, Transport t)
     {
-        mySocket = s;
+        myTransport = t;
         myMessageHandlers = h;
     }
 
+    /**
+     * setStrictPriority - how the sender thread schedules the traffic classes
+     * of the outgoing messages (cf. OutboundQueue).
+     */
+    public void setStrictPriority(boolean strict)
+    {
+        this.outgoing.setStrict(strict);
+    }
+
+    /**
+     * setCoalescing - must be called before run().
+     */
+    public void setCoalescing(boolean coalescing)
+    {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * setAdmission - must be called before run().
+     */
+    public void setAdmission(double rate, double burst)
+    {
+        this.admissionRate  = rate;
+        this.admissionBurst = burst;
+    }
+
     public void run()
     {    
-        byte[] recvedByteArray = new byte[2048];
-        DatagramPacket dpRecved = new DatagramPacket(
-            recvedByteArray, recvedByteArray.length);
-        
         for (int i=0; i<myMessageHandlers.length; i++)
             this.myMessageHandlers[i].setMuxDemux(this);
         
         this.receiverThread = Thread.currentThread();
         
         // senderThread
-        this.senderThread = new Thread(()->
-        {
-            while (!Thread.interrupted())
-            {        
-                String toSend;
-                try
-                {
-                    toSend = this.outgoing.dequeue();
-                }
-                catch (InterruptedException e)
+        this.senderThread = new Thread(() -> this.sendLoop());
+        this.senderThread.start();
+        
+        // receiveThread
+        this.receive();
+    }
+
+    /**
+     * sendLoop - drains all the queued messages at once and sends them, 
+     * coalesced if enabled.
+     */
+    private void sendLoop()
+    {
+        ArrayList<String> batch = new ArrayList<String>();
+        while (!Thread.interrupted())
+        {        
+            try
+            {
+                this.outgoing.dequeueAll(batch, MAX_BATCH);
+            }
+            catch (InterruptedException e)
+            {
+                System.err.println(e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try
+            {
+                if (this.coalescing)
+                    this.sendCoalesced(batch);
+                else
                 {
-                    System.err.println(e);
-                    Thread.currentThread().interrupt();
-                    return;
+                    for (String toSend : batch)
+                        this.sendDatagram(toSend.getBytes());
                 }
+            }
+            catch (IOException e)
+            {
+                System.err.println(e);
+                this.receiverThread.interrupt();
+                return;
+            }
+            Metrics.messagesSent.add(batch.size());
+            batch.clear();
+        }
+    }
+
+    private void sendDatagram(byte[] byteArray) throws IOException
+    {
+        DatagramPacket dpToSend = new DatagramPacket(
+            byteArray, byteArray.length, 
+            InetAddress.getByName("255.255.255.255"), 4242);
+        
+        this.myTransport.send(dpToSend);
+        Metrics.datagramsSent.increment();
+        Metrics.bytesSent.add(byteArray.length);
+    }
+
+    /**
+     * sendCoalesced - packs the messages into as few MULTI datagrams as 
+     * possible, each written with a single gathering write.
+     */
+    private void sendCoalesced(List<String> batch) throws IOException
+    {
+        ArrayList<byte[]> group = new ArrayList<byte[]>();
+        int size = 0;
+        for (String toSend : batch)
+        {
+            byte[] byteArray = toSend.getBytes();
+            // header: "MULTI;" + N + ";" + (up to 4 digits + ";") per message
+            int header = MULTI.length + 4 + 5*(group.size() + 1);
+            if (!group.isEmpty() && 
+                header + size + byteArray.length > MAX_DATAGRAM)
+            {
+                this.sendGroup(group);
+                group.clear();
+                size = 0;
+            }
+            group.add(byteArray);
+            size += byteArray.length;
+        }
+        if (!group.isEmpty())
+            this.sendGroup(group);
+    }
+
+    private void sendGroup(List<byte[]> group) throws IOException
+    {
+        if (group.size() == 1)
+        {
+            this.sendDatagram(group.get(0));
+            return;
+        }
+
+        StringBuilder header = new StringBuilder("MULTI;");
+        header.append(group.size()).append(';');
+        for (byte[] byteArray : group)
+            header.append(byteArray.length).append(';');
+
+        ByteBuffer[] buffers = new ByteBuffer[group.size() + 1];
+        buffers[0] = ByteBuffer.wrap(header.toString().getBytes());
+        int length = buffers[0].remaining();
+        for (int i=0; i<group.size(); i++)
+        {
+            buffers[i+1] = ByteBuffer.wrap(group.get(i));
+            length += group.get(i).length;
+        }
+
+        this.myTransport.send(buffers);
+        Metrics.datagramsSent.increment();
+        Metrics.bytesSent.add(length);
+    }
+
+    /**
+     * The state of the receive loop, reused from one batch to the next: the 
+     * HELLOs are copied into pooled HelloViews (parsed by the workers of 
+     * HelloReceiver), the other messages decoded into Strings.
+     */
+    private static class Received
+    {
+        final Admission admission;
+        final ArrayList<String>    messages = new ArrayList<String>();
+        final ArrayList<String>    sources  = new ArrayList<String>();
+        final ArrayList<HelloView> hellos   = new ArrayList<HelloView>();
+
+        /**
+         * The order of arrival of the messages, as runs of consecutive HELLOs
+         * or other messages: run i ends (exclusive) at runEnds[i] of hellos
+         * if runHellos[i], else of messages.
+         */
+        int       runs      = 0;
+        int[]     runEnds   = new int[16];
+        boolean[] runHellos = new boolean[16];
+
+        /**
+         * The lengths of the messages of a MULTI datagram.
+         */
+        int[] lengths = new int[16];
+
+        /**
+         * Dictionnary associating the addresses heard to their String 
+         * form, so that it isn't built again for every datagram.
+         */
+        final HashMap<InetAddress, String> ips = 
+            new HashMap<InetAddress, String>();
+
+        Received(Admission admission)
+        {
+            this.admission = admission;
+        }
+
+        int size()
+        {
+            return this.messages.size() + this.hellos.size();
+        }
 
-                byte[] byteArray = toSend.getBytes();
-                
-                try
+        String ip(InetAddress address)
+        {
+            String ip = this.ips.get(address);
+            if (ip == null)
+            {
+                if (this.ips.size() > 1024)
+                    this.ips.clear();
+                ip = address.getHostAddress();
+                this.ips.put(address, ip);
+            }
+            return ip;
+        }
+
+        /**
+         * add - the message data[offset, offset+length[, if accepted by 
+         * admission.
+         */
+        void add(byte[] data, int offset, int length, String ip)
+        {
+            if (!this.admission.accept(data, offset, length))
+                return;
+
+            boolean hello = length > HELLO.length && Arrays.equals(
+                data, offset, offset + HELLO.length, HELLO, 0, HELLO.length);
+            if (Trace.isEnabled(Trace.Event.DATAGRAM_RECEIVED))
+                trace(data, offset, length, hello, ip);
+
+            if (hello)
+            {
+                HelloView hv = HelloView.acquire();
+                hv.wrap(data, offset, length, ip);
+                this.hellos.add(hv);
+                this.arrived(true, this.hellos.size());
+                return;
+            }
+
+            this.messages.add(new String(data, offset, length));
+            this.sources.add(ip);
+            this.arrived(false, this.messages.size());
+        }
+
+        /**
+         * arrived - extends the last run, or starts a new one if it is of the
+         * other kind.
+         */
+        private void arrived(boolean hello, int end)
+        {
+            if (this.runs == 0 || this.runHellos[this.runs-1] != hello)
+            {
+                if (this.runs == this.runEnds.length)
                 {
-                    DatagramPacket dpToSend = new DatagramPacket(
-                        byteArray, byteArray.length, 
-                        InetAddress.getByName("255.255.255.255"), 4242);
-                    
-                    this.mySocket.send(dpToSend);
+                    this.runEnds   = Arrays.copyOf(this.runEnds, 2*this.runs);
+                    this.runHellos = Arrays.copyOf(this.runHellos, 
+                        2*this.runs);
                 }
-                catch (IOException e)
+                this.runHellos[this.runs] = hello;
+                this.runs++;
+            }
+            this.runEnds[this.runs-1] = end;
+        }
+
+        /**
+         * trace - records the type, sender and length of the message.
+         */
+        private static void trace(byte[] data, int offset, int length, 
+                                    boolean hello, String ip)
+        {
+            long type = OTHER;
+            if (hello)
+                type = HELLO_SYMBOL;
+            else if (startsWith(data, offset, length, SYN))
+                type = SYN_SYMBOL;
+            else if (startsWith(data, offset, length, LIST))
+                type = LIST_SYMBOL;
+
+            Trace.log(Trace.Event.DATAGRAM_RECEIVED, type, 
+                Trace.symbol(ip) << 32 | length);
+        }
+
+        private static boolean startsWith(byte[] data, int offset, int length,
+                                            byte[] prefix)
+        {
+            return length >= prefix.length && Arrays.equals(
+                data, offset, offset + prefix.length, prefix, 0, prefix.length);
+        }
+
+        void clear()
+        {
+            for (HelloView hv : this.hellos)
+                hv.release();
+            this.messages.clear();
+            this.sources.clear();
+            this.hellos.clear();
+            this.runs = 0;
+        }
+    }
+
+    /**
+     * unpack - splits a MULTI datagram into its messages.
+     * @return false if it is malformed (none of its messages is then added).
+     */
+    private static boolean unpack(byte[] data, int length, Received into,
+                                    String ip)
+    {
+        int count = -1;
+        int pos = MULTI.length;
+        int field = -1;
+        int value = 0;
+        while (pos < length)
+        {
+            byte b = data[pos++];
+            if (b == ';')
+            {
+                if (field == -1)
                 {
-                    System.err.println(e);
-                    this.receiverThread.interrupt();
-                    return;
+                    if (value <= 0 || value > length)
+                        return false;
+                    count = value;
+                    if (into.lengths.length < count)
+                        into.lengths = new int[count];
                 }
+                else
+                    into.lengths[field] = value;
+
+                field++;
+                value = 0;
+                if (field == count)
+                    break;
             }
-        });
-        this.senderThread.start();
-        
-        // receiveThread
+            else if (b >= '0' && b <= '9' && value < 100000)
+                value = value*10 + (b - '0');
+            else
+                return false;
+        }
+        if (count < 0 || field != count)
+            return false;
+
+        // nothing is handed over unless all the messages are there
+        int end = pos;
+        for (int i=0; i<count; i++)
+        {
+            end += into.lengths[i];
+            if (end > length)
+                return false;
+        }
+
+        for (int i=0; i<count; i++)
+        {
+            into.add(data, pos, into.lengths[i], ip);
+            pos += into.lengths[i];
+        }
+        return true;
+    }
+
+    /**
+     * receive - the receive loop. After each wakeup, all the pending 
+     * datagrams (up to MAX_BATCH) are drained, go through the Admission stage
+     * and are handed to the handlers as a single batch. The loop only copies
+     * the bytes: the handlers decode and process the messages (the HELLOs
+     * included) on their own per-sender workers (cf. PartitionedWorkers).
+     */
+    private void receive()
+    {
+        Transport transport = this.myTransport;
+        byte[] recvedByteArray = new byte[2048];
+        DatagramPacket dpRecved = new DatagramPacket(
+            recvedByteArray, recvedByteArray.length);
+
+        Received received = new Received(
+            new Admission(this.admissionRate, this.admissionBurst));
+
         try
         {    
             while (!Thread.interrupted())
             {
-                this.mySocket.receive(dpRecved);
-                String recved = new String(
-                    dpRecved.getData(), 0, dpRecved.getLength());
-
-                String ip = dpRecved.getAddress().toString().split(":")[0].split("/")[1];
-                
-                this.handleMessage(recved, ip);
-                
-                // clear the buffer before receiving next packet
-                recvedByteArray = new byte[2048];
+                transport.receive(dpRecved);
+                do
+                {
+                    InetAddress address = dpRecved.getAddress();
+                    Metrics.datagramsReceived.increment();
+                    Metrics.bytesReceived.add(dpRecved.getLength());
+                    // the end of the datagram didn't fit in the buffer
+                    if (dpRecved.getLength() == recvedByteArray.length)
+                        Metrics.droppedDatagrams.increment();
+
+                    if (!received.admission.admit(address))
+                        continue;
+
+                    String ip = received.ip(address);
+                    boolean multi = dpRecved.getLength() > MULTI.length && 
+                        Arrays.equals(recvedByteArray, 0, MULTI.length, 
+                            MULTI, 0, MULTI.length);
+
+                    Flight.DatagramReceived event = 
+                        new Flight.DatagramReceived();
+                    if (event.isEnabled())
+                    {
+                        event.nodeID   = Info.getMyID();
+                        event.sourceIP = ip;
+                        event.length   = dpRecved.getLength();
+                        event.multi    = multi;
+                        event.commit();
+                    }
+
+                    if (multi)
+                    {
+                        if (!unpack(recvedByteArray, dpRecved.getLength(), 
+                                received, ip))
+                            Metrics.unparsableDatagrams.increment();
+                    }
+                    else
+                        received.add(recvedByteArray, 0, 
+                            dpRecved.getLength(), ip);
+                }
+                while (received.size() < MAX_BATCH && 
+                        transport.receiveNow(dpRecved));
+
+                Flight.BatchDispatched event = Flight.dispatching();
+                this.handleBatch(received);
+                Flight.dispatched(event, received.hellos.size(), 
+                    received.messages.size());
+                received.clear();
             }
         }
         catch (IOException e)
@@ -90,16 +480,40 @@ class MuxDemuxSimple implements Runnable
             System.err.println(e);
             senderThread.interrupt();
         }
-        		
-        try
+
+        transport.close();
+    }
+
+    /**
+     * handleBatch - the messages are handed over in their order of arrival 
+     * (a run of HELLOs, then the run of other messages following them, 
+     * etc.), so that every handler gets the messages of a sender in the order
+     * it sent them. The handlers must not keep a reference to the lists, 
+     * which are reused for the next batch, nor to the views they don't 
+     * retain.
+     */
+    private void handleBatch(Received received)
+    {
+        int hellos   = 0;
+        int messages = 0;
+        for (int r=0; r<received.runs; r++)
         {
-            in.close(); 
-            mySocket.close();
-        }
-        catch (IOException e)
-        { 
-            System.err.println(e);
-            senderThread.interrupt();
+            int end = received.runEnds[r];
+            if (received.runHellos[r])
+            {
+                List<HelloView> run = received.hellos.subList(hellos, end);
+                for (int i=0; i<this.myMessageHandlers.length; i++)
+                    this.myMessageHandlers[i].handleHellos(run);
+                hellos = end;
+            }
+            else
+            {
+                List<String> run     = received.messages.subList(messages, end);
+                List<String> sources = received.sources.subList(messages, end);
+                for (int i=0; i<this.myMessageHandlers.length; i++)
+                    this.myMessageHandlers[i].handleBatch(run, sources);
+                messages = end;
+            }
         }
     }
 
@@ -0,0 +1,138 @@
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * OutboundQueue replaces the single outgoing SynchronizedQueue of 
+ * MuxDemuxSimple by one bounded queue per traffic class:
+ *    - CONTROL  HELLO messages, our liveness signalling.
+ *    - SYNC     SYN (and BOOT, DIGEST, PULL) messages.
+ *    - BULK     LIST (and SNAP) messages, and anything else.
+ * so that a large transfer filling the BULK queue never delays a HELLO 
+ * beyond the expiry window of our peers.
+ *
+ * The sender thread drains the classes either by strict priority (CONTROL
+ * first, then SYNC, then BULK) or by weighted round robin (up to WEIGHTS[c]
+ * messages of class c per round), which keeps BULK flowing even when SYNs
+ * keep arriving.
+ */
+public class OutboundQueue implements OutboundQueueMBean
+{
+    public enum TrafficClass
+    {
+        CONTROL,
+        SYNC,
+        BULK;
+    }
+
+    private final static int[] CAPACITIES = {8, 32, 64};
+    private final static int[] WEIGHTS    = {8, 4, 1};
+
+    private final LinkedList<String>[] queues;
+    private volatile boolean strict = false;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OutboundQueue(String name)
+    {
+        this.queues = new LinkedList[TrafficClass.values().length];
+        for (int i=0; i<this.queues.length; i++)
+            this.queues[i] = new LinkedList<String>();
+        Metrics.register("OutboundQueue", name, this);
+    }
+
+    /**
+     * classOf - the traffic class of an encoded message.
+     */
+    public static TrafficClass classOf(String msg)
+    {
+        if (msg.startsWith("HELLO;"))
+            return TrafficClass.CONTROL;
+        if (msg.startsWith("SYN;")    || msg.startsWith("BOOT;") ||
+            msg.startsWith("DIGEST;") || msg.startsWith("PULL;"))
+            return TrafficClass.SYNC;
+        return TrafficClass.BULK;
+    }
+
+    /**
+     * enqueue - blocks while the queue of the class of msg is full.
+     */
+    public synchronized void enqueue(String msg) throws InterruptedException
+    {
+        int c = classOf(msg).ordinal();
+        while (this.queues[c].size() == CAPACITIES[c])
+            this.wait();
+
+        if (this.isEmpty())
+            this.notifyAll();
+
+        this.queues[c].add(msg);
+    }
+
+    /**
+     * dequeueAll - waits for at least one message, then moves up to max 
+     * messages into batch, in the order they should be sent.
+     * @return the number of messages moved.
+     */
+    public synchronized int dequeueAll(List<String> batch, int max) 
+        throws InterruptedException
+    {
+        while (this.isEmpty())
+            this.wait();
+
+        // producers may be waiting for room in any of the classes
+        this.notifyAll();
+
+        int n = 0;
+        while (n < max && !this.isEmpty())
+        {
+            for (int c=0; c<this.queues.length && n < max; c++)
+            {
+                int quota = this.strict ? max : WEIGHTS[c];
+                while (quota-- > 0 && n < max && !this.queues[c].isEmpty())
+                {
+                    batch.add(this.queues[c].remove());
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private boolean isEmpty()
+    {
+        for (LinkedList<String> queue : this.queues)
+        {
+            if (!queue.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    public synchronized int getControlSize()
+    {
+        return this.queues[TrafficClass.CONTROL.ordinal()].size();
+    }
+
+    public synchronized int getSyncSize()
+    {
+        return this.queues[TrafficClass.SYNC.ordinal()].size();
+    }
+
+    public synchronized int getBulkSize()
+    {
+        return this.queues[TrafficClass.BULK.ordinal()].size();
+    }
+
+    public boolean isStrict()
+    {
+        return this.strict;
+    }
+
+    /**
+     * setStrict - strict priority if true, weighted round robin otherwise 
+     * (the default).
+     */
+    public void setStrict(boolean strict)
+    {
+        this.strict = strict;
+    }
+}
\ No newline at end of file
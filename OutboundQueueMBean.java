@@ -0,0 +1,11 @@
+/**
+ * JMX view of the OutboundQueue of MuxDemuxSimple (cf. Metrics).
+ */
+public interface OutboundQueueMBean
+{
+    public int getControlSize();
+    public int getSyncSize();
+    public int getBulkSize();
+    public boolean isStrict();
+    public void setStrict(boolean strict);
+}
\ No newline at end of file
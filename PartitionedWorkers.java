@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PartitionedWorkers runs the work of a message handler on several threads 
+ * (one per core by default). Messages are partitioned by the senderID they 
+ * carry: all the messages of a peer are processed in order by the same 
+ * partition, so the state about a peer can be kept partition-local (one map
+ * per partition, only touched by its thread) without any shared lock.
+ *
+ * Messages are enqueued and dequeued by batches, so that a burst costs one
+ * wakeup per partition instead of one per message.
+ *
+ * The messages are usually Strings, but may be views of the received bytes 
+ * (cf. HelloView).
+ *
+ * A Worker catches the RuntimeExceptions of each message and reports them
+ * with failed(), so that a bug triggered by one message doesn't drop the 
+ * rest of the batch, nor stop the partition.
+ */
+public class PartitionedWorkers<T> implements Runnable
+{
+    /**
+     * Maximum number of messages handed to the Worker at once.
+     */
+    private final static int MAX_BATCH = 64;
+
+    /**
+     * The body of the former single consumer loop of a handler, called with
+     * the messages of a partition in their order of arrival. The batch is 
+     * reused afterwards: don't keep it.
+     */
+    public interface Worker<T>
+    {
+        public void process(int partition, List<T> batch);
+    }
+
+    private final Worker<T> worker;
+    private final String name;
+    private final ArrayList<SynchronizedQueue<T>> queues = 
+        new ArrayList<SynchronizedQueue<T>>();
+
+    /**
+     * The per-partition batches of dispatchAll, reused by each calling 
+     * thread (the receive loop of MuxDemuxSimple).
+     */
+    private final ThreadLocal<ArrayList<ArrayList<T>>> batches;
+
+    public PartitionedWorkers(String name, Worker<T> worker)
+    {
+        this(name, Runtime.getRuntime().availableProcessors(), worker);
+    }
+
+    public PartitionedWorkers(String name, int partitions, Worker<T> worker)
+    {
+        this.worker = worker;
+        this.name   = name;
+        for (int i=0; i<partitions; i++)
+            this.queues.add(new SynchronizedQueue<>(20, name + "." + i));
+        this.batches = ThreadLocal.withInitial(() ->
+        {
+            ArrayList<ArrayList<T>> res = 
+                new ArrayList<ArrayList<T>>(partitions);
+            for (int i=0; i<partitions; i++)
+                res.add(new ArrayList<T>());
+            return res;
+        });
+    }
+
+    public int getPartitions()
+    {
+        return this.queues.size();
+    }
+
+    /**
+     * senderOf - the senderID of a HELLO, SYN or LIST message (the second
+     * field), without parsing the whole message.
+     */
+    public static String senderOf(String msg)
+    {
+        int start = msg.indexOf(';') + 1;
+        int end = msg.indexOf(';', start);
+        if (start == 0 || end < 0)
+            return "";
+        return msg.substring(start, end);
+    }
+
+    /**
+     * dispatch - hands msg to the partition of the given senderID.
+     */
+    public void dispatch(String senderID, T msg) 
+        throws InterruptedException
+    {
+        int partition = Math.floorMod(senderID.hashCode(), this.queues.size());
+        this.queues.get(partition).enqueue(msg);
+    }
+
+    /**
+     * dispatchAll - hands msgs.get(i) to the partition of senderIDs.get(i),
+     * each partition being woken up only once.
+     */
+    public void dispatchAll(List<String> senderIDs, List<T> msgs) 
+        throws InterruptedException
+    {
+        this.dispatchAll(msgs, i -> senderIDs.get(i).hashCode());
+    }
+
+    /**
+     * Senders - the hashCode of the senderID of msgs.get(i), for 
+     * dispatchAll.
+     */
+    public interface Senders
+    {
+        public int hashOf(int i);
+    }
+
+    /**
+     * dispatchAll - same as above, without building the list of senderIDs
+     * (e.g. for messages not parsed yet, cf. HelloView.getSenderHash).
+     */
+    public void dispatchAll(List<T> msgs, Senders senders) 
+        throws InterruptedException
+    {
+        int partitions = this.queues.size();
+        if (partitions == 1)
+        {
+            this.queues.get(0).enqueueAll(msgs);
+            return;
+        }
+
+        ArrayList<ArrayList<T>> batches = this.batches.get();
+        try
+        {
+            for (int i=0; i<msgs.size(); i++)
+                batches.get(Math.floorMod(senders.hashOf(i), partitions))
+                    .add(msgs.get(i));
+
+            for (int i=0; i<partitions; i++)
+            {
+                if (!batches.get(i).isEmpty())
+                    this.queues.get(i).enqueueAll(batches.get(i));
+            }
+        }
+        finally
+        {
+            for (int i=0; i<partitions; i++)
+                batches.get(i).clear();
+        }
+    }
+
+    /**
+     * run - starts a thread per partition but the first one, which runs in 
+     * the current thread.
+     */
+    public void run()
+    {
+        for (int i=1; i<this.queues.size(); i++)
+        {
+            final int partition = i;
+            new Thread(() -> this.work(partition)).start();
+        }
+        this.work(0);
+    }
+
+    private void work(int partition)
+    {
+        SynchronizedQueue<T> incoming = this.queues.get(partition);
+        ArrayList<T> batch = new ArrayList<T>();
+        while (!Thread.interrupted())
+        {
+            try
+            {
+                incoming.dequeueAll(batch, MAX_BATCH);
+            }
+            catch (InterruptedException e)
+            {
+                System.err.println(e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // a handler bug must not stop the partition: its senders would
+            // then be ignored until restart
+            try
+            {
+                this.worker.process(partition, batch);
+            }
+            catch (RuntimeException e)
+            {
+                this.failed(partition, e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * failed - reports a RuntimeException thrown while processing a message
+     * of partition.
+     */
+    public void failed(int partition, RuntimeException e)
+    {
+        String worker = this.name + "." + partition;
+        Metrics.workerFailures.increment();
+        Trace.log(Trace.Event.WORKER_FAILED, Trace.symbol(worker), 
+            Trace.symbol(e.getClass().getName()));
+        System.err.println(worker + " - " + e);
+        e.printStackTrace();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+/**
+ * A PeerEvent describes a change in our PeerTable, delivered asynchronously
+ * to the PeerListeners subscribed through Info.subscribe().
+ *
+ *    - PEER_JOINED     a PeerRecord was created (peer is HEARD).
+ *    - PEER_EXPIRED    a PeerRecord was deleted because it expired.
+ *    - STATE_CHANGED   the PeerState of a peer changed (oldState -> newState).
+ *    - REPLICA_UPDATED the database of a peer was replaced, the parts
+ *                      [firstChanged;lastChanged] of the new data differ from
+ *                      the previous version (empty range if only removed).
+ */
+public class PeerEvent
+{
+    public enum Type
+    {
+        PEER_JOINED,
+        PEER_EXPIRED,
+        STATE_CHANGED,
+        REPLICA_UPDATED;
+    }
+
+    final private Type      type;
+    final private String    peerID;
+    final private long      time;
+    final private PeerState oldState;
+    final private PeerState newState;
+    final private int       sequenceNo;
+    final private int       firstChanged;
+    final private int       lastChanged;
+    final private int       totalParts;
+
+    private PeerEvent(Type type, String peerID, PeerState oldState, 
+                        PeerState newState, int sequenceNo, int firstChanged, 
+                        int lastChanged, int totalParts)
+    {
+        this.type         = type;
+        this.peerID       = peerID;
+        this.time         = Clock.currentTimeMillis();
+        this.oldState     = oldState;
+        this.newState     = newState;
+        this.sequenceNo   = sequenceNo;
+        this.firstChanged = firstChanged;
+        this.lastChanged  = lastChanged;
+        this.totalParts   = totalParts;
+    }
+
+    public static PeerEvent joined(String peerID)
+    {
+        return new PeerEvent(Type.PEER_JOINED, peerID, null, PeerState.HEARD,
+            -1, -1, -1, 0);
+    }
+
+    public static PeerEvent expired(String peerID, PeerState lastState,
+                                    int sequenceNo)
+    {
+        return new PeerEvent(Type.PEER_EXPIRED, peerID, lastState, null,
+            sequenceNo, -1, -1, 0);
+    }
+
+    public static PeerEvent stateChanged(String peerID, PeerState oldState,
+                                         PeerState newState, int sequenceNo)
+    {
+        return new PeerEvent(Type.STATE_CHANGED, peerID, oldState, newState,
+            sequenceNo, -1, -1, 0);
+    }
+
+    /**
+     * replicaUpdated - 
+     *      compares both versions to find the range of parts which changed.
+     */
+    public static PeerEvent replicaUpdated(String peerID, String[] oldData,
+                                           String[] newData, int sequenceNo)
+    {
+        int first = 0;
+        while (first < oldData.length && first < newData.length && 
+                oldData[first].equals(newData[first]))
+            first++;
+
+        int lastOld = oldData.length - 1;
+        int lastNew = newData.length - 1;
+        while (lastOld >= first && lastNew >= first && 
+                oldData[lastOld].equals(newData[lastNew]))
+        {
+            lastOld--;
+            lastNew--;
+        }
+
+        return new PeerEvent(Type.REPLICA_UPDATED, peerID, null, null,
+            sequenceNo, first, lastNew, newData.length);
+    }
+
+    public Type getType()
+    {
+        return this.type;
+    }
+
+    public String getPeerID()
+    {
+        return this.peerID;
+    }
+
+    public long getTime()
+    {
+        return this.time;
+    }
+
+    public PeerState getOldState()
+    {
+        return this.oldState;
+    }
+
+    public PeerState getNewState()
+    {
+        return this.newState;
+    }
+
+    public int getSequenceNo()
+    {
+        return this.sequenceNo;
+    }
+
+    /**
+     * The three following get methods only make sense for REPLICA_UPDATED.
+     */
+    public int getFirstChanged()
+    {
+        return this.firstChanged;
+    }
+
+    public int getLastChanged()
+    {
+        return this.lastChanged;
+    }
+
+    public int getTotalParts()
+    {
+        return this.totalParts;
+    }
+
+    public String toString()
+    {
+        String res = this.type + " " + this.peerID;
+        switch (this.type)
+        {
+            case STATE_CHANGED:
+                res += ": " + this.oldState + " -> " + this.newState;
+                break;
+            case REPLICA_UPDATED:
+                res += ": seq=" + this.sequenceNo + " parts [" + 
+                    this.firstChanged + ";" + this.lastChanged + "]/" + 
+                    this.totalParts;
+                break;
+            default:
+                break;
+        }
+        return res;
+    }
+}
\ No newline at end of file
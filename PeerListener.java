@@ -0,0 +1,9 @@
+/**
+ * Implemented by the application to be notified of PeerEvents, see 
+ * Info.subscribe(). Called from the EventDispatcher thread, never from the
+ * protocol threads.
+ */
+public interface PeerListener
+{
+    public void onPeerEvent(PeerEvent event);
+}
\ No newline at end of file
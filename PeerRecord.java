@@ -6,9 +6,62 @@ public class PeerRecord
 {
     final private String    peerID;
     final private String    peerIP;
-    final private long      expirationTime;
+    final private FailureDetector detector;
     private       PeerState peerState;
-    private       Database  peerDatabase;
+
+    /**
+     * The replica. Once spilled to disk by the ReplicaStore (cf. 
+     * Info.setReplicaBudget), a Database of the same sequence# without data:
+     * getPeerData reloads it transparently. Replaced under the lock of the 
+     * PeerRecord, so that a replica isn't spilled while a new version is 
+     * being stored.
+     */
+    private volatile Database peerDatabase;
+
+    /**
+     * The version of the peer's database being received, null if none: 
+     * ListReceiver writes the LIST parts into it as they arrive, and it 
+     * replaces peerDatabase at once when complete (cf. Info.commitPeerDatabase).
+     * Only written by the ListReceiver worker of the peer's partition.
+     */
+    private volatile Database pendingDatabase;
+    private volatile int      pendingParts;
+
+    /**
+     * The JFR event of the transfer of pendingDatabase, null if none or if
+     * JFR doesn't record them (cf. Flight.ListTransfer). Same access as
+     * pendingDatabase.
+     */
+    private Flight.ListTransfer pendingTransfer;
+
+    /**
+     * The parts of the database read by the application, when it is not 
+     * replicated (cf. getLazyReplica), null until first used.
+     */
+    private LazyReplica lazyReplica = null;
+
+    /**
+     * Since when the peer is not SYNCHRONIZED (cf. Metrics.syncTime).
+     */
+    private       long      unsyncedSince;
+
+    /**
+     * The sequence# announced in the last HELLO of the peer, -1 if unknown.
+     */
+    private volatile int    advertisedSequenceNo = -1;
+
+    /**
+     * When we last received a part of the peer's database (a LIST addressed
+     * to us or overheard, or a SNAP relayed by another peer), cf. 
+     * isTransferInProgress.
+     */
+    private volatile long   lastPartReceived;
+
+    /**
+     * A transfer is considered over (completed or stalled) when no part 
+     * arrived during TRANSFER_TIMEOUT ms.
+     */
+    private final static long TRANSFER_TIMEOUT = 2000;
 
     /**
      * Constructor called when the senderID doesn't exist inside PeerTable.
@@ -18,10 +71,16 @@ public class PeerRecord
     {
         this.peerID         = peerID;
         this.peerIP         = peerIP;
-        this.expirationTime = System.currentTimeMillis() + 
-                                ((long) helloInterval)*1000;
+        this.detector       = new FailureDetector(helloInterval, 
+                                Clock.currentTimeMillis());
         this.peerState      = PeerState.HEARD;
-        this.peerDatabase   = new Database();
+        this.peerDatabase   = new Database(peerID);
+        this.unsyncedSince  = Clock.currentTimeMillis();
+    }
+
+    public String getPeerID()
+    {
+        return this.peerID;
     }
 
     public String getPeerIP()
@@ -34,9 +93,59 @@ public class PeerRecord
         return this.peerDatabase.getDatabaseSequenceNo();
     }
     
+    /**
+     * getExpirationTime - when the peer will be expired if it isn't heard 
+     * from meanwhile (cf. FailureDetector).
+     */
     public long getExpirationTime()
     {
-        return this.expirationTime;
+        return this.detector.getExpirationTime();
+    }
+
+    /**
+     * heard - called by Info.updatePeerTable for every HELLO of the peer,
+     * received at now. Must be called with Info.lock held.
+     */
+    void heard(int helloInterval, long now)
+    {
+        this.detector.heartbeat(helloInterval, now);
+    }
+
+    /**
+     * suspicion - cf. Info.getSuspicion. Must be called with Info.lock held.
+     */
+    double suspicion(long now)
+    {
+        return this.detector.phi(now);
+    }
+
+    public int getAdvertisedSequenceNo()
+    {
+        return this.advertisedSequenceNo;
+    }
+
+    public void setAdvertisedSequenceNo(int sequenceNo)
+    {
+        this.advertisedSequenceNo = sequenceNo;
+    }
+
+    /**
+     * partReceived - called for every part of the peer's database received,
+     * whether in a LIST or in a SNAP relayed by another peer.
+     */
+    public void partReceived()
+    {
+        this.lastPartReceived = Clock.currentTimeMillis();
+    }
+
+    /**
+     * isTransferInProgress - whether a LIST transfer of the peer is being 
+     * received, in which case there is no need to SYN it (cf. HelloReceiver).
+     */
+    public boolean isTransferInProgress()
+    {
+        return this.lastPartReceived != 0 && 
+            Clock.currentTimeMillis() - this.lastPartReceived < TRANSFER_TIMEOUT;
     }
 
     public PeerState getPeerState()
@@ -46,7 +155,178 @@ public class PeerRecord
 
     public String[] getPeerData()
     {
-        return this.peerDatabase.getData();
+        return this.getPeerDatabase().getData();
+    }
+
+    /**
+     * getPeerDatabase - the replica itself, never modified in place (read 
+     * back from disk if it was spilled).
+     */
+    public Database getPeerDatabase()
+    {
+        Database db = this.peerDatabase;
+        ReplicaStore store = Info.getReplicaStore();
+        if (store == null)
+            return db;
+
+        if (db.getData() == null)
+            return store.load(this);
+        store.touch(this);
+        return db;
+    }
+
+    /**
+     * getLazyReplica - the parts of the database fetched on demand, for the
+     * nodes which don't replicate the databases of their peers (cf. 
+     * Info.setLazy, LazyReplica).
+     */
+    public synchronized LazyReplica getLazyReplica()
+    {
+        if (this.lazyReplica == null)
+            this.lazyReplica = new LazyReplica(this);
+        return this.lazyReplica;
+    }
+
+    /**
+     * peekLazyReplica - 
+     * @return the LazyReplica, null if the application never asked for it.
+     */
+    synchronized LazyReplica peekLazyReplica()
+    {
+        return this.lazyReplica;
+    }
+
+    /**
+     * getResidentDatabase - cf. ReplicaStore.
+     * @return the replica, null if it is spilled.
+     */
+    Database getResidentDatabase()
+    {
+        Database db = this.peerDatabase;
+        return db.getData() == null ? null : db;
+    }
+
+    /**
+     * spill - drops the data of db, if it still is the replica.
+     * @return false if it was replaced meanwhile.
+     */
+    synchronized boolean spill(Database db)
+    {
+        if (this.peerDatabase != db)
+            return false;
+        this.peerDatabase = new Database(this.peerID, null, 
+            db.getDatabaseSequenceNo());
+        return true;
+    }
+
+    /**
+     * restore - db read back from disk, if the replica is still spilled.
+     */
+    synchronized void restore(Database db)
+    {
+        if (this.peerDatabase.getData() == null)
+            this.peerDatabase = db;
+    }
+
+    /**
+     * applyPart - writes a LIST part into the pending version of the 
+     * database, which is (re)started if it isn't the version of the part.
+     * @param overheard whether the part was addressed to another peer.
+     * @return false if the part was already received (or is out of range).
+     */
+    public boolean applyPart(int sequenceNo, int totalParts, int partNo, 
+                                String data, boolean overheard)
+    {
+        this.partReceived();
+
+        Database pending = this.pendingDatabase;
+        if (pending == null || 
+            pending.getDatabaseSequenceNo() != sequenceNo ||
+            pending.getData().length != totalParts)
+        {
+            pending = new Database(this.peerID, new String[totalParts], 
+                sequenceNo);
+            this.pendingParts    = 0;
+            this.pendingDatabase = pending;
+            this.startTransfer(sequenceNo, totalParts);
+        }
+
+        String[] parts = pending.getData();
+        if (partNo < 0 || partNo >= parts.length || parts[partNo] != null)
+            return false;
+
+        parts[partNo] = data;
+        this.pendingParts++;
+
+        Flight.ListTransfer transfer = this.pendingTransfer;
+        if (transfer != null)
+        {
+            transfer.partsReceived++;
+            if (overheard)
+                transfer.partsOverheard++;
+            transfer.bytes += data.length();
+        }
+        return true;
+    }
+
+    /**
+     * startTransfer - begins the JFR event of a new pending version, after
+     * committing the one of the version it replaces as abandoned.
+     */
+    private void startTransfer(int sequenceNo, int totalParts)
+    {
+        this.endTransfer(false);
+
+        Flight.ListTransfer transfer = new Flight.ListTransfer();
+        if (!transfer.isEnabled())
+            return;
+
+        transfer.begin();
+        transfer.nodeID     = Info.getMyID();
+        transfer.peerID     = this.peerID;
+        transfer.sequenceNo = sequenceNo;
+        transfer.totalParts = totalParts;
+        this.pendingTransfer = transfer;
+    }
+
+    private void endTransfer(boolean completed)
+    {
+        Flight.ListTransfer transfer = this.pendingTransfer;
+        if (transfer == null)
+            return;
+
+        transfer.completed = completed;
+        transfer.commit();
+        this.pendingTransfer = null;
+    }
+
+    public boolean isPendingComplete()
+    {
+        Database pending = this.pendingDatabase;
+        return pending != null && 
+            this.pendingParts == pending.getData().length;
+    }
+
+    /**
+     * The three following get methods give the progress of the transfer in 
+     * progress: parts received out of total parts of the pending sequence#
+     * (-1 and 0 out of 0 if none).
+     */
+    public int getPendingSequenceNo()
+    {
+        Database pending = this.pendingDatabase;
+        return pending == null ? -1 : pending.getDatabaseSequenceNo();
+    }
+
+    public int getPendingParts()
+    {
+        return this.pendingDatabase == null ? 0 : this.pendingParts;
+    }
+
+    public int getPendingTotalParts()
+    {
+        Database pending = this.pendingDatabase;
+        return pending == null ? 0 : pending.getData().length;
     }
 
     /**
@@ -63,10 +343,36 @@ public class PeerRecord
     /** 
      * setPeerState - 
      *      called while updating the PeerTable (cf. Info class).
+     *      Subscribers are notified of every actual transition.
      */
     public void setPeerState(PeerState newState)
     {
+        PeerState oldState = this.peerState;
         this.peerState = newState;
+        if (oldState == newState)
+            return;
+
+        if (newState == PeerState.SYNCHRONIZED)
+            Metrics.syncTime.record(
+                Clock.currentTimeMillis() - this.unsyncedSince);
+        else if (oldState == PeerState.SYNCHRONIZED)
+            this.unsyncedSince = Clock.currentTimeMillis();
+
+        Trace.log(Trace.Event.STATE_CHANGED, Trace.symbol(this.peerID), 
+            oldState.ordinal() << 8 | newState.ordinal());
+        Flight.PeerStateChanged event = new Flight.PeerStateChanged();
+        if (event.isEnabled())
+        {
+            event.nodeID               = Info.getMyID();
+            event.peerID               = this.peerID;
+            event.oldState             = oldState.toString();
+            event.newState             = newState.toString();
+            event.sequenceNo           = this.getPeerSequenceNo();
+            event.advertisedSequenceNo = this.advertisedSequenceNo;
+            event.commit();
+        }
+        Info.publish(PeerEvent.stateChanged(this.peerID, oldState, newState,
+            this.getPeerSequenceNo()));
     }
 
     /**
@@ -76,8 +382,24 @@ public class PeerRecord
      * @param newData    should be the complete data to be updated
      * @param sequenceNo the new sequenceNo
      */
-    public void updatePeerDatabase(String[] newData, int sequenceNo)
+    public synchronized void updatePeerDatabase(String[] newData, 
+                                                int sequenceNo)
+    {
+        this.peerDatabase = new Database(this.peerID, newData, sequenceNo);
+    }
+
+    /**
+     * commitPendingDatabase - publishes the pending version, once complete,
+     * as the peer's database.
+     */
+    public synchronized void commitPendingDatabase()
     {
-        this.peerDatabase.updateDatabase(newData, sequenceNo);
+        if (!this.isPendingComplete())
+            return;
+
+        this.peerDatabase    = this.pendingDatabase;
+        this.pendingDatabase = null;
+        this.pendingParts    = 0;
+        this.endTransfer(true);
     }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+/**
+ * A PullMessage is a string formatted as follows:
+ *      PULL;senderID;peerID;originID;sequence#;
+ * 
+ * where:
+ *    - senderID is a string of up to 16 characters, containing the characters 
+ *      A-Z a-z 0-9 (only), and which represents the symbolic name of the 
+ *      sending machine.
+ *    - peerID is the senderID of the peer, to which this message is addressed:
+ *      it announced in a DIGEST that it holds the database of originID.
+ *    - originID is the senderID of the peer whose database is requested.
+ *    - sequence# is the version of it requested: the peer answers with SNAP
+ *      messages if it still holds this version (cf. Gossip).
+ */
+
+public class PullMessage
+{
+    final private String senderID;
+    final private String peerID;
+    final private String originID;
+    final private int    sequenceNo;
+    
+    /**
+     * Constructor1 -
+     *      takes a string formatted as above, and populates the attributes of 
+     *      the PullMessage object accordingly.
+     */
+    public PullMessage(String s)
+    {
+        String e;
+        
+        String[] tokens = s.split(";");
+        if (tokens.length < 5)
+        {
+            e = "wrong format";
+            throw new IllegalArgumentException(e);
+        }
+
+        if (!tokens[0].equals("PULL"))
+        {
+            e = "should start with PULL";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID = tokens[1];
+
+        if (!Tokenizer.isWord(this.senderID))
+        {
+            e = "should be a word (senderID=" + tokens[1] +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.peerID   = tokens[2];
+        this.originID = tokens[3];
+        try
+        {
+            this.sequenceNo = Integer.parseInt(tokens[4]);
+        }
+        catch (NumberFormatException ne)
+        {
+            throw new IllegalArgumentException(ne);
+        }
+    }
+
+    /**
+     * Constructor2 -
+     *      creates a PullMessage object
+     */
+    public PullMessage(String senderID, String peerID, String originID, 
+                        int sequenceNo)
+    {
+        String e;
+        
+        if (!Tokenizer.isWord(senderID))
+        {
+            e = "should be a word (senderID=" + senderID +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID   = senderID;
+        this.peerID     = peerID;
+        this.originID   = originID;
+        this.sequenceNo = sequenceNo;
+    }
+
+    /** 
+     * getPullMessageAsEncodedString
+     * 
+     * @return  a string of the format indicated above, encoding the attributes 
+     *          of the PullMessage object, all ready to be sent out over the 
+     *          network.
+     */
+    public String getPullMessageAsEncodedString()
+    {
+        String res = "PULL;";
+        res += this.senderID   + ";";
+        res += this.peerID     + ";";
+        res += this.originID   + ";";
+        res += this.sequenceNo + ";";
+        return res;
+    }
+
+    /**
+     * toString -
+     *      provide a nice, human-readable, print-out of the object contents.
+     */
+    public String toString()
+    {
+        String res = this.getPullMessageAsEncodedString() + "\n\n";
+        res += "\tsenderID      = " + this.senderID      + "\n";
+        res += "\tpeerID        = " + this.peerID        + "\n";
+        res += "\toriginID      = " + this.originID      + "\n";
+        res += "\tsequenceNo    = " + this.sequenceNo    + "\n";
+        return res;
+    }
+
+    /**
+     * The four following get methods are needed while receiving a PULL.
+     */
+    public String getSenderID()
+    {
+        return this.senderID;
+    }
+
+    public String getPeerID()
+    {
+        return this.peerID;
+    }
+
+    public String getOriginID()
+    {
+        return this.originID;
+    }
+
+    public int getSequenceNo()
+    {
+        return this.sequenceNo;
+    }
+
+    /**
+     * No need to set - final attributes are assigned in the constructor.
+     */ 
+}
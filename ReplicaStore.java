@@ -0,0 +1,388 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * ReplicaStore caps the heap used by the replicas of our PeerTable (cf.
+ * Info.setReplicaBudget): the replicas are kept in LRU order of their last
+ * read or update, and when their estimated size exceeds the budget, the
+ * least recently used ones are spilled to a file of the store directory
+ * (one per peer). A spilled PeerRecord keeps its sequence# and peerState,
+ * only its data is gone: PeerRecord.getPeerData reloads it transparently.
+ *
+ * The files are never written or read with the lock of the store held, as 
+ * its methods are called with Info.lock held (stored, remove): the replicas
+ * to spill are queued to a background writer and stay on the heap until 
+ * they are written, and a reload reads the file before locking the store.
+ *
+ * The file of an expired peer may be kept as its tombstone (cf. Tombstones,
+ * remove): it is then only deleted once the tombstone is dropped (discard).
+ *
+ * Lock order: Info.lock, then the store, then the PeerRecord.
+ */
+class ReplicaStore
+{
+    private final long budget;
+    private final File directory;
+
+    /**
+     * Dictionnary associating the peerID of the replicas on the heap to
+     * their PeerRecord, in LRU order, and to their estimated size.
+     */
+    private final LinkedHashMap<String, PeerRecord> resident =
+        new LinkedHashMap<String, PeerRecord>(16, 0.75f, true);
+    private final HashMap<String, Long> sizes = new HashMap<String, Long>();
+    private long residentBytes = 0;
+
+    /**
+     * A replica queued to the writer, with its size when it was queued, and
+     * whether its file is to be kept as a tombstone (the peer expired).
+     */
+    private static class Spill
+    {
+        final PeerRecord peerRecord;
+        final long       size;
+        boolean          buried = false;
+
+        Spill(PeerRecord peerRecord, long size)
+        {
+            this.peerRecord = peerRecord;
+            this.size       = size;
+        }
+    }
+
+    /**
+     * The replicas queued to the writer (still resident and accounted in 
+     * residentBytes), by peerID and in order, and their total size.
+     */
+    private final HashMap<String, Spill> spilling = 
+        new HashMap<String, Spill>();
+    private final ArrayDeque<Spill> queue = new ArrayDeque<Spill>();
+    private long spillingBytes = 0;
+
+    /**
+     * The replica being written, null if none.
+     */
+    private Spill writing = null;
+
+    private Thread writerThread = null;
+
+    /**
+     * @param budget    estimated bytes of replicas kept on the heap.
+     * @param directory where the spilled replicas are written, created if
+     *                  needed.
+     */
+    ReplicaStore(long budget, File directory)
+    {
+        this.budget    = budget;
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    /**
+     * sizeOf - estimated heap size of data: the array and the Strings
+     * (compact, one byte per character).
+     */
+    static long sizeOf(String[] data)
+    {
+        long res = 16 + 4L*data.length;
+        for (String s : data)
+            res += 40 + (s == null ? 0 : s.length());
+        return res;
+    }
+
+    private File fileOf(String peerID)
+    {
+        return new File(this.directory, peerID + ".replica");
+    }
+
+    public synchronized long getResidentBytes()
+    {
+        return this.residentBytes;
+    }
+
+    public synchronized int getResidentReplicas()
+    {
+        return this.resident.size();
+    }
+
+    /**
+     * stored - the replica of peerRecord was just replaced.
+     */
+    public synchronized void stored(PeerRecord peerRecord)
+    {
+        Database db = peerRecord.getResidentDatabase();
+        if (db == null)
+            return;
+        this.account(peerRecord, sizeOf(db.getData()));
+        this.evict(peerRecord.getPeerID());
+    }
+
+    /**
+     * touch - the replica of peerRecord was just read.
+     */
+    public synchronized void touch(PeerRecord peerRecord)
+    {
+        this.resident.get(peerRecord.getPeerID());
+    }
+
+    /**
+     * load - reads back the replica of peerRecord if it was spilled.
+     * @return the replica.
+     */
+    public Database load(PeerRecord peerRecord)
+    {
+        Database db = peerRecord.getResidentDatabase();
+        if (db != null)
+        {
+            this.touch(peerRecord);
+            return db;
+        }
+
+        String peerID = peerRecord.getPeerID();
+        int sequenceNo = peerRecord.getPeerSequenceNo();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(this.fileOf(peerID)))))
+        {
+            if (in.readInt() != sequenceNo)
+                throw new IOException("stale replica of " + peerID);
+            String[] data = new String[in.readInt()];
+            for (int i=0; i<data.length; i++)
+                data[i] = in.readUTF();
+            db = new Database(peerID, data, sequenceNo);
+            Metrics.replicasReloaded.increment();
+        }
+        catch (IOException e)
+        {
+            // the replica is lost: start over, the peer will be SYNed again
+            System.err.println(e);
+            db = new Database(peerID);
+        }
+
+        synchronized (this)
+        {
+            peerRecord.restore(db);
+            // the new version if it was replaced (or reloaded) meanwhile
+            db = peerRecord.getResidentDatabase();
+            this.account(peerRecord, sizeOf(db.getData()));
+            this.evict(peerID);
+            return db;
+        }
+    }
+
+    /**
+     * remove - the peer expired.
+     * @param buried whether its replica is kept as a tombstone: it is then 
+     * written to its file if it is still on the heap, and the file is kept.
+     */
+    public synchronized void remove(PeerRecord peerRecord, boolean buried)
+    {
+        String peerID = peerRecord.getPeerID();
+        // if being written, the writer deletes the file afterwards unless
+        // it is buried
+        Spill spill = this.spilling.get(peerID);
+        if (spill != null && spill.peerRecord == peerRecord)
+        {
+            this.spilling.remove(peerID);
+            this.spillingBytes -= spill.size;
+            spill.buried = buried;
+        }
+        else if (buried && peerRecord.getResidentDatabase() != null)
+        {
+            spill = new Spill(peerRecord, 0);
+            spill.buried = true;
+            this.queue.add(spill);
+            this.startWriter();
+        }
+        if (this.resident.remove(peerID) != null)
+            this.residentBytes -= this.sizes.remove(peerID);
+        if (!buried)
+            this.fileOf(peerID).delete();
+    }
+
+    /**
+     * discard - the tombstone of peerID was dropped: so is its file.
+     */
+    public synchronized void discard(String peerID)
+    {
+        // the writer deletes it afterwards
+        for (Spill spill : this.queue)
+        {
+            if (spill.buried && spill.peerRecord.getPeerID().equals(peerID))
+                spill.buried = false;
+        }
+        if (this.writing != null && 
+            this.writing.peerRecord.getPeerID().equals(peerID))
+            this.writing.buried = false;
+        this.fileOf(peerID).delete();
+    }
+
+    private void account(PeerRecord peerRecord, long size)
+    {
+        String peerID = peerRecord.getPeerID();
+        Long previous = this.sizes.put(peerID, size);
+        if (previous != null)
+            this.residentBytes -= previous;
+        this.residentBytes += size;
+        this.resident.put(peerID, peerRecord);
+    }
+
+    /**
+     * evict - queues the least recently used replicas (but the one of keep)
+     * to the writer until the budget is met, once they are written.
+     */
+    private void evict(String keep)
+    {
+        Iterator<PeerRecord> it = this.resident.values().iterator();
+        while (this.residentBytes - this.spillingBytes > this.budget && 
+                it.hasNext())
+        {
+            PeerRecord peerRecord = it.next();
+            String peerID = peerRecord.getPeerID();
+            if (peerID.equals(keep) || this.spilling.containsKey(peerID))
+                continue;
+
+            Spill spill = new Spill(peerRecord, this.sizes.get(peerID));
+            this.spilling.put(peerID, spill);
+            this.queue.add(spill);
+            this.spillingBytes += spill.size;
+        }
+
+        if (!this.queue.isEmpty())
+            this.startWriter();
+    }
+
+    /**
+     * startWriter - wakes the writer up (started on the first spill).
+     */
+    private void startWriter()
+    {
+        if (this.writerThread == null)
+        {
+            this.writerThread = new Thread(() -> this.writeLoop(), 
+                "ReplicaStore.writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        }
+        this.notify();
+    }
+
+    /**
+     * writeLoop - writes the queued replicas to their file, without the lock
+     * of the store, then drops them from the heap.
+     */
+    private void writeLoop()
+    {
+        while (!Thread.interrupted())
+        {
+            Spill spill;
+            synchronized (this)
+            {
+                try
+                {
+                    while (this.queue.isEmpty())
+                        this.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    System.err.println(e);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                spill = this.queue.poll();
+                this.writing = spill;
+            }
+
+            Database db = spill.peerRecord.getResidentDatabase();
+            boolean written = db != null && this.write(
+                spill.peerRecord.getPeerID(), db);
+
+            synchronized (this)
+            {
+                this.writing = null;
+                this.spilled(spill, db, written);
+            }
+        }
+    }
+
+    /**
+     * write - writes db to the file of peerID (through a temporary file, so
+     * that a concurrent load never reads a partial one).
+     * @return false if it couldn't be written.
+     */
+    private boolean write(String peerID, Database db)
+    {
+        File file = this.fileOf(peerID);
+        File tmp  = new File(this.directory, peerID + ".replica.tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp))))
+            {
+                out.writeInt(db.getDatabaseSequenceNo());
+                out.writeInt(db.getData().length);
+                for (String s : db.getData())
+                    out.writeUTF(s);
+            }
+            Files.move(tmp.toPath(), file.toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, 
+                StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        catch (IOException e)
+        {
+            System.err.println(e);
+            tmp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * spilled - the writer is done with spill: db (the replica when it was
+     * written) is dropped from the heap if it still is the replica.
+     */
+    private void spilled(Spill spill, Database db, boolean written)
+    {
+        String peerID = spill.peerRecord.getPeerID();
+        // the file is now its tombstone
+        if (spill.buried)
+            return;
+        if (this.spilling.get(peerID) != spill)
+        {
+            // the peer expired meanwhile (or its tombstone was dropped)
+            if (written)
+                this.fileOf(peerID).delete();
+            return;
+        }
+        this.spilling.remove(peerID);
+        this.spillingBytes -= spill.size;
+
+        // if it couldn't be written, it stays on the heap until the next 
+        // eviction
+        if (!written)
+            return;
+
+        // if replaced meanwhile, the new version is accounted by stored(),
+        // and may be spilled in turn
+        if (!spill.peerRecord.spill(db))
+        {
+            this.evict(null);
+            return;
+        }
+
+        this.resident.remove(peerID);
+        this.residentBytes -= this.sizes.remove(peerID);
+        Metrics.replicasSpilled.increment();
+    }
+}
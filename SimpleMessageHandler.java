@@ -1,5 +1,28 @@
+import java.util.List;
+
 interface SimpleMessageHandler extends Runnable
 {
     public void setMuxDemux(MuxDemuxSimple md);
     public void handleMessage(String recved, String senderIP);
-}
\ No newline at end of file
+
+    /**
+     * handleBatch - a run of consecutive messages (but HELLOs, cf. 
+     * handleHellos) drained by MuxDemuxSimple in one wakeup, recved.get(i) 
+     * being sent by senderIPs.get(i). The runs of a wakeup are handed over 
+     * in their order of arrival. The lists are reused afterwards: don't 
+     * keep them.
+     */
+    default public void handleBatch(List<String> recved, List<String> senderIPs)
+    {
+        for (int i=0; i<recved.size(); i++)
+            this.handleMessage(recved.get(i), senderIPs.get(i));
+    }
+
+    /**
+     * handleHellos - a run of consecutive HELLOs drained by MuxDemuxSimple in
+     * one wakeup, as views not parsed yet. The list is reused and the views
+     * are released afterwards: retain the views you keep (cf. HelloView).
+     */
+    default public void handleHellos(List<HelloView> hellos)
+    {}
+}
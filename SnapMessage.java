@@ -0,0 +1,201 @@
+/**
+ * A SnapMessage is a string formatted as follows:
+ *      SNAP;senderID;peerID;originID;sequence#;TotalParts;part#;data;
+ * 
+ * where:
+ *    - senderID is a string of up to 16 characters, containing the characters 
+ *      A-Z a-z 0-9 (only), and which represents the symbolic name of the 
+ *      sending machine.
+ *    - peerID is the senderID of the peer, to which this message is addressed
+ *    - originID is the senderID of the peer whose database this is: unlike a
+ *      LIST, a SNAP relays the replica of another peer (or the database of 
+ *      the sender itself, then originID = senderID).
+ *    - sequence# is the sequence# of this version of the origin's database.
+ *    - TotalParts and part# are as in a LIST (cf. ListMessage).
+ *    - data is a text string of max 255 characters, which contains (part of)
+ *      the database of the origin.
+ * 
+ * The receiver must not trust the sender about the origin's database: it only
+ * adopts it once a HELLO from the origin announces the same sequence# (cf. 
+ * Info.offerProvisional).
+ */
+
+public class SnapMessage
+{
+    final private String senderID;
+    final private String peerID;
+    final private String originID;
+    final private int    sequenceNo;
+    final private int    totalParts;
+    final private int    partNo;
+    final private String data;
+    
+    /**
+     * Constructor1 -
+     *      takes a string formatted as above, and populates the attributes of 
+     *      the SnapMessage object accordingly.
+     */
+    public SnapMessage(String s)
+    {
+        String e;
+        
+        String[] tokens = s.split(";");
+        if (tokens.length < 8)
+        {
+            e = "wrong format";
+            throw new IllegalArgumentException(e);
+        }
+
+        if (!tokens[0].equals("SNAP"))
+        {
+            e = "should start with SNAP";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.senderID = tokens[1];
+
+        if (!Tokenizer.isWord(this.senderID))
+        {
+            e = "should be a word (senderID=" + tokens[1] +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.peerID   = tokens[2];
+        this.originID = tokens[3];
+
+        if (!Tokenizer.isWord(this.originID))
+        {
+            e = "should be a word (originID=" + tokens[3] +")";
+            throw new IllegalArgumentException(e);
+        }
+        
+        try
+        {
+            this.sequenceNo = Integer.parseInt(tokens[4]);
+            this.totalParts = Integer.parseInt(tokens[5]);
+            this.partNo = Integer.parseInt(tokens[6]);
+        }
+        catch (NumberFormatException ne)
+        {
+            throw new IllegalArgumentException(ne);
+        }
+        this.data = tokens[7];
+
+        if (this.data.length() > 255)
+        {
+            e = "should be in [0;255] (data=" + tokens[7] +")";
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Constructor2 -
+     *      creates a SnapMessage object
+     */
+    public SnapMessage(String senderID, String peerID, String originID, 
+                        int sequenceNo, int totalParts, int partNo, 
+                        String data)
+    {
+        String e;
+
+        if (!Tokenizer.isWord(senderID))
+        {
+            e = "should be a word (senderID=" + senderID +")";
+            throw new IllegalArgumentException(e);
+        }
+        
+        this.senderID   = senderID;
+        this.peerID     = peerID;
+        this.originID   = originID;
+        this.sequenceNo = sequenceNo;
+        this.totalParts = totalParts;
+        this.partNo     = partNo;
+
+        if (data.length() > 255)
+        {
+            e = "should be in [0;255] (data=" + data +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        this.data = data;
+    }
+
+    /** 
+     * getSnapMessageAsEncodedString
+     * 
+     * @return  a string of the format indicated above, encoding the attributes 
+     *          of the SnapMessage object, all ready to be sent out over the 
+     *          network.
+     */
+    public String getSnapMessageAsEncodedString()
+    {
+        String res = "SNAP;";
+        res += this.senderID   + ";";
+        res += this.peerID     + ";";
+        res += this.originID   + ";";
+        res += this.sequenceNo + ";";
+        res += this.totalParts + ";";
+        res += this.partNo     + ";";
+        res += this.data       + ";";
+        return res;
+    }
+
+    /**
+     * toString -
+     *      provide a nice, human-readable, print-out of the object contents.
+     */
+    public String toString()
+    {
+        String res = this.getSnapMessageAsEncodedString() + "\n\n";
+        res += "\tsenderID      = " + this.senderID       + "\n";
+        res += "\tpeerID        = " + this.peerID         + "\n";
+        res += "\toriginID      = " + this.originID       + "\n";
+        res += "\tsequenceNo    = " + this.sequenceNo     + "\n";
+        res += "\ttotalParts    = " + this.totalParts     + "\n";
+        res += "\tpartNo        = " + this.partNo         + "\n";
+        res += "\tdata          = " + this.data           + "\n";
+        return res;
+    }
+
+    /**
+     * The seven following get methods are needed while receiving a SNAP.
+     */
+    public String getSenderID()
+    {
+        return this.senderID;
+    }
+
+    public String getPeerID()
+    {
+        return this.peerID;
+    }
+
+    public String getOriginID()
+    {
+        return this.originID;
+    }
+
+    public int getSequenceNo()
+    {
+        return this.sequenceNo;
+    }
+
+    public int getTotalParts()
+    {
+        return this.totalParts;
+    }
+    
+    public int getPartNo()
+    {
+        return this.partNo;
+    }
+
+    public String getData()
+    {
+        return this.data;
+    }
+
+    /**
+     * No need to set - final attributes are assigned in the constructor.
+     */ 
+}
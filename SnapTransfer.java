@@ -0,0 +1,88 @@
+import java.util.HashMap;
+
+/**
+ * SnapTransfer sends databases as SNAP messages (cf. SnapMessage) and 
+ * assembles, by origin, the SNAP messages we receive: each complete database
+ * is offered to Info, which only adopts it once a HELLO of the origin 
+ * announces the same sequence# (cf. Info.offerProvisional).
+ * Used by Bootstrap and Gossip. An instance is only used by one worker.
+ */
+class SnapTransfer
+{
+    /**
+     * Dictionnaries associating originID to the database we fill in, to its
+     * sequence# and to the number of lacking parts.
+     */
+    private HashMap<String, String[]> data        = new HashMap<>();
+    private HashMap<String, Integer>  sequenceNos = new HashMap<>();
+    private HashMap<String, Integer>  lackPartsNo = new HashMap<>();
+
+    /**
+     * send - sends all the parts of db to peerID.
+     */
+    public static void send(MuxDemuxSimple md, String peerID, Database db)
+    {
+        String   myID  = Info.getMyID();
+        String[] parts = db.getData();
+        for (int i=0; i<parts.length; i++)
+        {
+            SnapMessage sm = new SnapMessage(myID, peerID, db.getOriginID(),
+                db.getDatabaseSequenceNo(), parts.length, i, parts[i]);
+            md.send(sm.getSnapMessageAsEncodedString());
+            Metrics.snapPartsSent.increment();
+        }
+    }
+
+    /**
+     * add - fills in the database of the origin of sm.
+     * @return false if the part was already received (or is out of range).
+     */
+    public boolean add(SnapMessage sm)
+    {
+        String originID   = sm.getOriginID();
+        int    sequenceNo = sm.getSequenceNo();
+        int    totalParts = sm.getTotalParts();
+        int    partNo     = sm.getPartNo();
+        if (partNo < 0 || partNo >= totalParts)
+            return false;
+
+        // no need to SYN the origin meanwhile
+        PeerRecord peerRecord = Info.getPeerRecord(originID);
+        if (peerRecord != null)
+            peerRecord.partReceived();
+
+        if (this.data.get(originID) == null ||
+            this.data.get(originID).length != totalParts ||
+            this.sequenceNos.get(originID) != sequenceNo)
+        {
+            this.data.put(originID, new String[totalParts]);
+            this.sequenceNos.put(originID, sequenceNo);
+            this.lackPartsNo.put(originID, totalParts);
+        }
+
+        String[] originDatabase = this.data.get(originID);
+        if (originDatabase[partNo] != null)
+            return false;
+
+        originDatabase[partNo] = sm.getData();
+        Metrics.snapPartsReceived.increment();
+        int lack = this.lackPartsNo.get(originID) - 1;
+        this.lackPartsNo.put(originID, lack);
+
+        if (lack == 0) // Finished
+        {
+            this.data.remove(originID);
+            this.sequenceNos.remove(originID);
+            this.lackPartsNo.remove(originID);
+            Info.offerProvisional(originID, originDatabase, sequenceNo);
+        }
+        return true;
+    }
+
+    public void clear()
+    {
+        this.data.clear();
+        this.sequenceNos.clear();
+        this.lackPartsNo.clear();
+    }
+}
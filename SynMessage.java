@@ -1,6 +1,8 @@
 /**
  * A SynMessage is a string formatted as follows:
  *      SYN;senderID;peerID;sequence#;
+ * or, to request a range of parts only (cf. LazyReplica):
+ *      SYN;senderID;peerID;sequence#;FirstPart;PartCount;
  * 
  * where:
  *    - senderID is a string of up to 16 characters, containing the characters 
@@ -9,6 +11,10 @@
  *    - peerID is the senderID of a peer, to which this message is addressed
  *    - sequence# is the sequence# received in a HELLO message generated from 
  *      the peer.
+ *    - FirstPart and PartCount (>= 1) are the part# of the first LIST wanted
+ *      and how many. A range is served from the current version of the 
+ *      peer's database, whatever sequence#. Peers ignoring these fields 
+ *      answer with the whole database.
  */
 
 public class SynMessage
@@ -16,6 +22,8 @@ public class SynMessage
     final private String senderID;
     final private String peerID;
     final private int sequenceNo;
+    final private int firstPart;
+    final private int partCount;
     
     /**
      * Constructor1 -
@@ -41,7 +49,7 @@ public class SynMessage
 
         this.senderID = tokens[1];
 
-        if (!this.senderID.matches("\\w+") || this.senderID.length() > 16)
+        if (!Tokenizer.isWord(this.senderID))
         {
             e = "should be a word (senderID=" + tokens[1] +")";
             throw new IllegalArgumentException(e);
@@ -51,11 +59,28 @@ public class SynMessage
         try
         {
             this.sequenceNo = Integer.parseInt(tokens[3]);
+            if (tokens.length >= 6)
+            {
+                this.firstPart = Integer.parseInt(tokens[4]);
+                this.partCount = Integer.parseInt(tokens[5]);
+            }
+            else
+            {
+                this.firstPart = 0;
+                this.partCount = 0;
+            }
         }
         catch (NumberFormatException ne)
         {
             throw new IllegalArgumentException(ne);
         }
+
+        if (this.firstPart < 0 || this.partCount < 0)
+        {
+            e = "wrong range (FirstPart=" + this.firstPart + 
+                ", PartCount=" + this.partCount + ")";
+            throw new IllegalArgumentException(e);
+        }
     }
 
     /**
@@ -66,7 +91,35 @@ public class SynMessage
     {
         String e;
         
-        if (!senderID.matches("\\w+") || senderID.length() > 16)
+        if (!Tokenizer.isWord(senderID))
+        {
+            e = "should be a word (senderID=" + senderID +")";
+            throw new IllegalArgumentException(e);
+        }
+
+        if (!Info.inPeers(peerID))
+        {
+            e = "should be a peer in PeerTable (peerID=" + peerID + ")";
+            throw new IllegalArgumentException(e);
+        }
+        
+        this.senderID   = senderID;
+        this.peerID     = peerID;
+        this.sequenceNo = sequenceNo;
+        this.firstPart  = 0;
+        this.partCount  = 0;
+    }
+
+    /**
+     * Constructor3 -
+     *      same as above, requesting partCount parts from part# firstPart.
+     */
+    public SynMessage(String senderID, String peerID, int sequenceNo, 
+                        int firstPart, int partCount)
+    {
+        String e;
+        
+        if (!Tokenizer.isWord(senderID))
         {
             e = "should be a word (senderID=" + senderID +")";
             throw new IllegalArgumentException(e);
@@ -77,10 +130,19 @@ public class SynMessage
             e = "should be a peer in PeerTable (peerID=" + peerID + ")";
             throw new IllegalArgumentException(e);
         }
+
+        if (firstPart < 0 || partCount < 1)
+        {
+            e = "wrong range (firstPart=" + firstPart + 
+                ", partCount=" + partCount + ")";
+            throw new IllegalArgumentException(e);
+        }
         
         this.senderID   = senderID;
         this.peerID     = peerID;
         this.sequenceNo = sequenceNo;
+        this.firstPart  = firstPart;
+        this.partCount  = partCount;
     }
 
     /** 
@@ -96,6 +158,11 @@ public class SynMessage
         res += this.senderID   + ";";
         res += this.peerID     + ";";
         res += this.sequenceNo + ";";
+        if (this.isRange())
+        {
+            res += this.firstPart + ";";
+            res += this.partCount + ";";
+        }
         return res;
     }
 
@@ -109,6 +176,11 @@ public class SynMessage
         res += "\tsenderID      = " + this.senderID      + "\n";
         res += "\tpeerID        = " + this.peerID        + "\n";
         res += "\tsequenceNo    = " + this.sequenceNo    + "\n";
+        if (this.isRange())
+        {
+            res += "\tFirstPart     = " + this.firstPart     + "\n";
+            res += "\tPartCount     = " + this.partCount     + "\n";
+        }
         return res;
     }
 
@@ -130,6 +202,25 @@ public class SynMessage
         return this.sequenceNo;
     }
 
+    /**
+     * isRange - whether only some parts are requested (cf. getFirstPart, 
+     * getPartCount), rather than the whole database.
+     */
+    public boolean isRange()
+    {
+        return this.partCount > 0;
+    }
+
+    public int getFirstPart()
+    {
+        return this.firstPart;
+    }
+
+    public int getPartCount()
+    {
+        return this.partCount;
+    }
+
     /**
      * No need to set - final attributes are assigned in the constructor.
      */ 
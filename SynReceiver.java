@@ -1,32 +1,100 @@
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /** 
  * - Create a thread to generate LIST messages to transfer my database.
  * - Ignore the messages not destinated to us or we are already processing.
+ * - SYNs arriving within the coalescing window are served by the same 
+ *   transfer: each part is sent once, addressed to the group of requesters
+ *   (comma-separated peerIDs, cf. ListMessage).
+ * - A SYN requesting a range of parts (cf. LazyReplica) is served right 
+ *   away with those parts of the current version, at most MAX_RANGE.
+ * 
+ * SYNs are processed by PartitionedWorkers, partitioned by senderID.
  */
 class SynReceiver implements SimpleMessageHandler, Runnable
 {
-    private static String TAG = "SynReceiver   - ";
-    private SynchronizedQueue incoming = new SynchronizedQueue(20);
+    private PartitionedWorkers<String> workers = 
+        new PartitionedWorkers<>("SynReceiver.incoming", this::process);
     private MuxDemuxSimple myMuxDemux = null;
 
     /**
-     * Dictionnary associating peerID to the thread we created which sends
-     * LIST messages to transfer my database. While the corresponding thread
-     * is still processing, we will ignore other SYN messages.
+     * At most MAX_GROUP requesters per transfer, so that the peerID field
+     * (up to 16 characters per senderID) keeps the LISTs well within a 
+     * datagram.
      */
-    private HashMap<String, Thread> myThreads = new HashMap<>();
+    private final static int MAX_GROUP = 32;
+
+    /**
+     * At most MAX_RANGE parts are sent for a range request.
+     */
+    private final static int MAX_RANGE = 64;
+
+    /**
+     * How long (ms) a transfer waits for other SYNs before sending its 
+     * first part, 0 to serve every SYN on its own.
+     */
+    private long window = 0;
+
+    /**
+     * The transfer still gathering requesters (null if none), and the 
+     * requesters of all the transfers not finished yet: while a transfer 
+     * to a peer is in progress, we ignore its other SYN messages.
+     * Shared by all the partitions, guarded by `sessions`.
+     */
+    private final Object          sessions   = new Object();
+    private LinkedHashSet<String> gathering  = null;
+    private HashSet<String>       requesters = new HashSet<String>();
 
     public void setMuxDemux(MuxDemuxSimple md)
     {
         myMuxDemux = md;
     }
 
+    /**
+     * setCoalescingWindow - cf. window above.
+     */
+    public void setCoalescingWindow(long window)
+    {
+        this.window = window;
+    }
+
     public void handleMessage(String recved, String source)
     {
+        if (!recved.startsWith("SYN;"))
+            return;
+
+        try
+        {
+            workers.dispatch(PartitionedWorkers.senderOf(recved), recved);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+	
+    public void handleBatch(List<String> recved, List<String> senderIPs)
+    {
+        ArrayList<String> senderIDs = new ArrayList<String>();
+        ArrayList<String> msgs      = new ArrayList<String>();
+        for (int i=0; i<recved.size(); i++)
+        {
+            if (!recved.get(i).startsWith("SYN;"))
+                continue;
+            senderIDs.add(PartitionedWorkers.senderOf(recved.get(i)));
+            msgs.add(recved.get(i));
+        }
+        if (msgs.isEmpty())
+            return;
+
         try
         {
-            incoming.enqueue(recved+"@"+source);
+            workers.dispatchAll(senderIDs, msgs);
         }
         catch (InterruptedException e)
         {
@@ -38,64 +106,137 @@ class SynReceiver implements SimpleMessageHandler, Runnable
 	
     public void run()
     {
-        while (!Thread.interrupted())
+        workers.run();
+    }
+
+    private void process(int partition, List<String> batch)
+    {
+        for (String msg : batch)
         {
-            String msgAndSenderIP;
             try
             {
-                msgAndSenderIP = incoming.dequeue();
+                this.processMessage(partition, msg);
             }
-            catch (InterruptedException e)
+            catch (RuntimeException e)
             {
-                System.err.println(e);
-                Thread.currentThread().interrupt();
-                return;
+                workers.failed(partition, e);
             }
+        }
+    }
 
-            int index_at    = msgAndSenderIP.lastIndexOf("@"); 
-            String msg      = msgAndSenderIP.substring(0, index_at);
-            String senderIP = msgAndSenderIP.substring(index_at+1);
-            
-            SynMessage sm;
-            try
-            {
-                sm = new SynMessage(msg);
-            }
-            catch (IllegalArgumentException e)
-            {
-                // Not a SYN message (perhaps HELLO, LIST, etc...)
-                continue;
-            }
+    private void processMessage(int partition, String msg)
+    {
+        SynMessage sm;
+        Flight.MessageDecoded decoding = Flight.decoding();
+        try
+        {
+            sm = new SynMessage(msg);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Not a SYN message (perhaps HELLO, LIST, etc...)
+            Flight.decoded(decoding, msg, false);
+            return;
+        }
+        Flight.decoded(decoding, msg, true);
+
+        String senderID     = sm.getSenderID();
+        String destID       = sm.getPeerID();
+        int    sequenceNo   = sm.getSequenceNo();
 
-            String senderID     = sm.getSenderID();
-            String destID       = sm.getPeerID();
-            int    sequenceNo   = sm.getSequenceNo();
+        String myID         = Info.getMyID();
+        int    mySequenceNo = Info.getMySequenceNo();
 
-            String myID         = Info.getMyID();
-            int    mySequenceNo = Info.getMySequenceNo();
+        if (destID.equals(myID) && sm.isRange())
+        {
+            this.serveRange(sm);
+            return;
+        }
 
-            if (destID.equals(myID) && sequenceNo != mySequenceNo)
+        if (destID.equals(myID) && sequenceNo != mySequenceNo)
+        {
+            synchronized (this.sessions)
             {
-                Thread t = this.myThreads.get(senderID);
-                if (t == null || !t.isAlive())
+                if (!this.requesters.add(senderID))
+                    return;
+
+                if (this.gathering == null || 
+                    this.gathering.size() >= MAX_GROUP)
                 {
-                    // generate LIST messages containing my data
-                    Thread sendListThread = new Thread(() ->
-                    {
-                        String[] myData = Info.getMyData();
-                        
-                        for (int i=0; i<myData.length; i++)
-                        {
-                            ListMessage lm = new ListMessage(
-                                myID, senderID, mySequenceNo, 
-                                myData.length, i, myData[i]); 
-                            myMuxDemux.send(lm.getListMessageAsEncodedString());
-                        }
-                    });
-                    this.myThreads.put(senderID, sendListThread);
-                    sendListThread.start();
+                    LinkedHashSet<String> group = new LinkedHashSet<String>();
+                    this.gathering = group;
+                    new Thread(() -> this.transfer(group)).start();
                 }
+                this.gathering.add(senderID);
+            }
+        }
+    }
+
+    /**
+     * serveRange - sends the parts requested by sm. A range beyond the end 
+     * of my database still gets the last part, so that the requester learns
+     * TotalParts.
+     */
+    private void serveRange(SynMessage sm)
+    {
+        ListCache myParts = Info.getMyListCache();
+        int totalParts = myParts.getTotalParts();
+        if (totalParts == 0)
+            return;
+
+        int first = Math.min(sm.getFirstPart(), totalParts - 1);
+        int last  = Math.min(totalParts, 
+            first + Math.min(sm.getPartCount(), MAX_RANGE));
+        for (int i=first; i<last; i++)
+        {
+            myMuxDemux.send(myParts.getPart(i, sm.getSenderID()));
+            Metrics.listPartsSent.increment();
+        }
+        Metrics.rangesServed.increment();
+    }
+
+    /**
+     * transfer - sends the LIST messages containing my data to the group,
+     * once the coalescing window is over.
+     */
+    private void transfer(LinkedHashSet<String> group)
+    {
+        try
+        {
+            if (this.window > 0)
+                Clock.sleep(this.window);
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println(e);
+            Thread.currentThread().interrupt();
+        }
+
+        String peerIDs;
+        synchronized (this.sessions)
+        {
+            if (this.gathering == group)
+                this.gathering = null;
+            peerIDs = String.join(",", group);
+        }
+        if (group.size() > 1)
+            Metrics.synCoalesced.add(group.size() - 1);
+
+        try
+        {
+            ListCache myParts = Info.getMyListCache();
+            for (int i=0; i<myParts.getTotalParts(); i++)
+            {
+                myMuxDemux.send(myParts.getPart(i, peerIDs));
+                Metrics.listPartsSent.increment();
+            }
+        }
+        finally
+        {
+            synchronized (this.sessions)
+            {
+                this.requesters.removeAll(group);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,48 @@
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.lang.Thread;
 
-public class SynchronizedQueue
+public class SynchronizedQueue<T> implements SynchronizedQueueMBean
 {
-    private final LinkedList<String> queue;
+    /**
+     * An ArrayDeque sized to the capacity: enqueueing doesn't allocate.
+     */
+    private final ArrayDeque<T> queue;
     private final int capacity;
+    private int highWatermark = 0;
 
     public SynchronizedQueue(int capacity)
     {
-        this.queue = new LinkedList<String>();
+        this.queue = new ArrayDeque<T>(capacity);
         this.capacity = capacity;
     }
 
+    /**
+     * Constructor2 - 
+     *      same as above, the queue is also published (cf. Metrics) so that
+     *      its depth can be monitored.
+     */
+    public SynchronizedQueue(int capacity, String name)
+    {
+        this(capacity);
+        Metrics.register("Queue", name, this);
+    }
+
+    public synchronized int getSize()
+    {
+        return this.queue.size();
+    }
+
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    public synchronized int getHighWatermark()
+    {
+        return this.highWatermark;
+    }
+
     public synchronized boolean isEmpty()
     {
         return this.queue.size() == 0;   
@@ -22,7 +53,7 @@ public class SynchronizedQueue
         return this.queue.size() == this.capacity;   
     }
 
-    public synchronized void enqueue(String recved) throws InterruptedException
+    public synchronized void enqueue(T recved) throws InterruptedException
     {
         while (this.isFull())
             this.wait();   
@@ -31,9 +62,76 @@ public class SynchronizedQueue
             this.notifyAll();
         
         this.queue.add(recved);
+        if (this.queue.size() > this.highWatermark)
+            this.highWatermark = this.queue.size();
+    }
+
+    /**
+     * offer - same as enqueue but never blocks.
+     * @return false if the queue is full (the element is then dropped).
+     */
+    public synchronized boolean offer(T recved)
+    {
+        if (this.isFull())
+            return false;
+
+        if(this.queue.size() == 0)
+            this.notifyAll();
+
+        this.queue.add(recved);
+        if (this.queue.size() > this.highWatermark)
+            this.highWatermark = this.queue.size();
+        return true;
+    }
+
+    /**
+     * enqueueAll - enqueues all the elements (in order) with a single 
+     * wakeup of the consumer, blocking whenever the queue is full.
+     */
+    public synchronized void enqueueAll(List<T> recved) 
+        throws InterruptedException
+    {
+        int i = 0;
+        while (i < recved.size())
+        {
+            while (this.isFull())
+                this.wait();
+
+            if(this.queue.size() == 0)
+                this.notifyAll();
+
+            while (i < recved.size() && !this.isFull())
+                this.queue.add(recved.get(i++));
+
+            if (this.queue.size() > this.highWatermark)
+                this.highWatermark = this.queue.size();
+        }
+    }
+
+    /**
+     * dequeueAll - waits for at least one element, then moves up to max 
+     * elements into batch.
+     * @return the number of elements moved.
+     */
+    public synchronized int dequeueAll(List<T> batch, int max) 
+        throws InterruptedException
+    {
+        while (this.isEmpty())
+            this.wait();
+
+        if(this.queue.size() == this.capacity)
+            this.notifyAll();
+
+        int n = 0;
+        while (n < max && !this.queue.isEmpty())
+        {
+            batch.add(this.queue.remove());
+            n++;
+        }
+        return n;
     }
 
-    public synchronized String dequeue() throws InterruptedException 
+    public synchronized T dequeue() throws InterruptedException 
     {
         while (this.isEmpty())
             this.wait();
@@ -0,0 +1,9 @@
+/**
+ * JMX view of a SynchronizedQueue (cf. Metrics).
+ */
+public interface SynchronizedQueueMBean
+{
+    public int getSize();
+    public int getCapacity();
+    public int getHighWatermark();
+}
\ No newline at end of file
@@ -0,0 +1,187 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tokenizer splits a message (';'-separated fields, cf. the ...Message
+ * classes) in a single pass over the received bytes, without creating any
+ * String: the fields are only recorded as [start, end[ ranges, which are
+ * compared, parsed as integers or turned into Strings on demand.
+ *
+ * An instance is reused from one message to the next, by a single thread.
+ */
+class Tokenizer
+{
+    /**
+     * Returned by parseInt when the field is not an int.
+     */
+    public final static long NOT_AN_INT = Long.MIN_VALUE;
+
+    /**
+     * The IDs turned into Strings so far, indexed by hash: the HELLOs of a
+     * peer don't allocate its senderID again and again. Races between 
+     * threads are benign: a slot always
+     * holds a complete (immutable) String, and a lost update only costs one
+     * more allocation.
+     */
+    private final static String[] SYMBOLS = new String[4096];
+
+    private byte[] data   = null;
+    private int[]  starts = new int[16];
+    private int[]  ends   = new int[16];
+    private int    count  = 0;
+
+    /**
+     * reset - tokenizes data[offset, offset+length[. As with String.split,
+     * the trailing empty fields are ignored.
+     */
+    public void reset(byte[] data, int offset, int length)
+    {
+        this.data  = data;
+        this.count = 0;
+
+        int start = offset;
+        int end   = offset + length;
+        for (int i=offset; i<end; i++)
+        {
+            if (data[i] == ';')
+            {
+                this.add(start, i);
+                start = i + 1;
+            }
+        }
+        this.add(start, end);
+
+        while (this.count > 0 &&
+                this.starts[this.count-1] == this.ends[this.count-1])
+            this.count--;
+    }
+
+    private void add(int start, int end)
+    {
+        if (this.count == this.starts.length)
+        {
+            this.starts = Arrays.copyOf(this.starts, 2*this.count);
+            this.ends   = Arrays.copyOf(this.ends,   2*this.count);
+        }
+        this.starts[this.count] = start;
+        this.ends[this.count]   = end;
+        this.count++;
+    }
+
+    public int count()
+    {
+        return this.count;
+    }
+
+    /**
+     * equals - whether field i is s (s being ASCII, as all the fields we
+     * compare are).
+     */
+    public boolean equals(int i, String s)
+    {
+        int start = this.starts[i];
+        if (this.ends[i] - start != s.length())
+            return false;
+        for (int j=0; j<s.length(); j++)
+        {
+            if (this.data[start + j] != s.charAt(j))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * isWord - whether field i is an ID: same as matches("\\w+") and at
+     * most 16 characters.
+     */
+    public boolean isWord(int i)
+    {
+        int start = this.starts[i];
+        int end   = this.ends[i];
+        if (end == start || end - start > 16)
+            return false;
+        for (int j=start; j<end; j++)
+        {
+            if (!isWordChar(this.data[j]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * parseInt - same as Integer.parseInt(field i).
+     * @return NOT_AN_INT if it is not an int.
+     */
+    public long parseInt(int i)
+    {
+        int pos = this.starts[i];
+        int end = this.ends[i];
+        boolean negative = pos < end && this.data[pos] == '-';
+        if (negative || (pos < end && this.data[pos] == '+'))
+            pos++;
+        if (pos == end || end - pos > 10)
+            return NOT_AN_INT;
+
+        long value = 0;
+        for (; pos<end; pos++)
+        {
+            byte b = this.data[pos];
+            if (b < '0' || b > '9')
+                return NOT_AN_INT;
+            value = value*10 + (b - '0');
+        }
+        if (negative)
+            value = -value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            return NOT_AN_INT;
+        return value;
+    }
+
+    /**
+     * symbol - field i as a String (an ID, hence ASCII), allocated only the
+     * first time it is seen.
+     */
+    public String symbol(int i)
+    {
+        int start = this.starts[i];
+        int end   = this.ends[i];
+
+        // String.hashCode of an ASCII string
+        int h = 0;
+        for (int j=start; j<end; j++)
+            h = 31*h + (this.data[j] & 0xff);
+        int slot = (h ^ (h >>> 16)) & (SYMBOLS.length - 1);
+
+        String s = SYMBOLS[slot];
+        if (s != null && this.equals(i, s))
+            return s;
+
+        s = new String(this.data, start, end - start,
+            StandardCharsets.ISO_8859_1);
+        SYMBOLS[slot] = s;
+        return s;
+    }
+
+    /**
+     * isWord - replaces s.matches("\\w+") && s.length() <= 16 in the
+     * constructors of the messages, without going through a regex.
+     */
+    public static boolean isWord(String s)
+    {
+        if (s.isEmpty() || s.length() > 16)
+            return false;
+        for (int j=0; j<s.length(); j++)
+        {
+            char c = s.charAt(j);
+            if (c > 127 || !isWordChar((byte) c))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(byte b)
+    {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') ||
+            (b >= '0' && b <= '9') || b == '_';
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Tombstones keeps the replicas of the expired peers for a grace period (cf.
+ * Info.setTombstones), so that a peer heard again shortly after (e.g. on a
+ * flapping link) gets its replica back at once: if its HELLOs announce the
+ * same sequence#, there is nothing to transfer, and otherwise only the
+ * version it announces is SYNed, as for any INCONSISTENT peer.
+ *
+ * At most capacity replicas are kept, the oldest tombstones being dropped
+ * first. With a ReplicaStore, a tombstone is only a spilled Database (the
+ * sequence# without data): its file is kept by the store until the
+ * tombstone is dropped, so that tombstones don't hold the heap the replica
+ * budget saved (cf. ReplicaStore.remove). None are kept by default. Guarded
+ * by Info.lock.
+ */
+class Tombstones
+{
+    public final static int  DEFAULT_CAPACITY = 0;
+    public final static long DEFAULT_GRACE    = 60000;
+
+    private final int  capacity;
+    private final long grace;
+
+    private static class Tombstone
+    {
+        final Database replica;
+        final long     expiredAt;
+
+        Tombstone(Database replica, long expiredAt)
+        {
+            this.replica   = replica;
+            this.expiredAt = expiredAt;
+        }
+    }
+
+    /**
+     * Dictionnary associating the peerID of the expired peers to their last
+     * replica, oldest first.
+     */
+    private final LinkedHashMap<String, Tombstone> tombstones =
+        new LinkedHashMap<String, Tombstone>();
+
+    /**
+     * @param capacity how many replicas are kept at most.
+     * @param grace    how long (ms) they are kept.
+     */
+    Tombstones(int capacity, long grace)
+    {
+        this.capacity = capacity;
+        this.grace    = grace;
+    }
+
+    public int size()
+    {
+        return this.tombstones.size();
+    }
+
+    /**
+     * bury - the peer of replica (possibly spilled) expired at now.
+     */
+    public void bury(Database replica, long now)
+    {
+        // e.g. its spilled replica couldn't be read back
+        if (replica.getDatabaseSequenceNo() < 0)
+            return;
+
+        String peerID = replica.getOriginID();
+        this.tombstones.remove(peerID);
+        this.tombstones.put(peerID, new Tombstone(replica, now));
+        Metrics.tombstonesKept.increment();
+        this.purge(now);
+    }
+
+    /**
+     * exhume - the peer is heard again at now.
+     * @return its last replica (possibly spilled), null if it wasn't kept 
+     * (or for too long).
+     */
+    public Database exhume(String peerID, long now)
+    {
+        this.purge(now);
+        Tombstone tombstone = this.tombstones.remove(peerID);
+        if (tombstone == null)
+            return null;
+
+        Metrics.tombstonesRestored.increment();
+        return tombstone.replica;
+    }
+
+    /**
+     * purge - drops the tombstones older than grace, and the oldest ones
+     * beyond capacity.
+     */
+    private void purge(long now)
+    {
+        Iterator<Tombstone> it = this.tombstones.values().iterator();
+        while (it.hasNext())
+        {
+            Tombstone tombstone = it.next();
+            if (this.tombstones.size() <= this.capacity &&
+                now - tombstone.expiredAt <= this.grace)
+                break;
+            it.remove();
+
+            ReplicaStore store = Info.getReplicaStore();
+            if (store != null && tombstone.replica.getData() == null)
+                store.discard(tombstone.replica.getOriginID());
+        }
+    }
+}
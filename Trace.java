@@ -0,0 +1,311 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The "static" class Trace records the debugging events of the protocol 
+ * (formerly printed by every handler on System.out) into a preallocated
+ * ring buffer, in binary form: each record is SLOT longs
+ *      [sequence; time; event; a; b]
+ * where a and b are the arguments of the event (numbers, or ids of the 
+ * strings interned with symbol()). Recording is lock-free: a thread claims a
+ * slot with an atomic increment, fills it and publishes its sequence last, 
+ * so that readers can skip the slots being (over)written.
+ *
+ * Nothing is formatted on the message path: a background dumper 
+ * (startDumper) or an on-demand snapshot() turns the records into text.
+ * The level and the categories recorded can be changed at runtime (also via
+ * JMX, cf. TraceMBean).
+ */
+public class Trace implements TraceMBean
+{
+    public enum Level
+    {
+        ERROR,
+        INFO,
+        DEBUG;
+    }
+
+    public enum Category
+    {
+        HELLO,
+        SYN,
+        LIST,
+        PEER,
+        DATAGRAM,
+        EVENT,
+        WORKER;
+    }
+
+    /**
+     * Formats the arguments of an event.
+     */
+    private interface Format
+    {
+        public String format(long a, long b);
+    }
+
+    public enum Event
+    {
+        HELLO_SENT(Category.HELLO, Level.DEBUG, "HelloSender   - ",
+            (a, b) -> "HELLO sent, sequence#=" + a + " NumPeers=" + b),
+        SYN_SENT(Category.SYN, Level.DEBUG, "HelloReceiver - ",
+            (a, b) -> "SYN sent to " + symbol(a) + ", sequence#=" + b),
+        PEER_CREATED(Category.PEER, Level.INFO, "Info          - ",
+            (a, b) -> symbol(a) + ": PeerRecord created"),
+        PEER_DELETED(Category.PEER, Level.INFO, "Info          - ",
+            (a, b) -> symbol(a) + ": PeerRecord deleted"),
+        STATE_CHANGED(Category.PEER, Level.INFO, "Info          - ",
+            (a, b) -> symbol(a) + ": " + PeerState.values()[(int) (b >> 8)] + 
+                " -> " + PeerState.values()[(int) (b & 0xff)]),
+        LIST_IGNORED(Category.LIST, Level.DEBUG, "ListReceiver  - ",
+            (a, b) -> symbol(a) + ": no need to synchronize, sequence#=" + b),
+        DATAGRAM_RECEIVED(Category.DATAGRAM, Level.DEBUG, "MuxDemux      - ",
+            (a, b) -> symbol(a) + " from " + symbol(b >>> 32) + " (" + 
+                (b & 0xffffffffL) + " bytes)"),
+        EVENT_DROPPED(Category.EVENT, Level.INFO, "EventDispatch - ",
+            (a, b) -> "queue full, dropped " + PeerEvent.Type.values()[(int) a] +
+                " of " + symbol(b)),
+        WORKER_FAILED(Category.WORKER, Level.ERROR, "Workers       - ",
+            (a, b) -> symbol(a) + ": message dropped on " + symbol(b));
+
+        final Category category;
+        final Level    level;
+        final String   tag;
+        final Format   format;
+
+        Event(Category category, Level level, String tag, Format format)
+        {
+            this.category = category;
+            this.level    = level;
+            this.tag      = tag;
+            this.format   = format;
+        }
+    }
+
+    private final static int SLOT     = 5;
+    private final static int CAPACITY = 1 << 14;
+    private final static int MAX_SYMBOLS = 1 << 16;
+
+    private final static AtomicLongArray ring = 
+        new AtomicLongArray(CAPACITY*SLOT);
+    private final static AtomicLong cursor = new AtomicLong(0);
+
+    private final static ConcurrentHashMap<String, Integer> symbols = 
+        new ConcurrentHashMap<String, Integer>();
+    private final static ArrayList<String> symbolNames = 
+        new ArrayList<String>();
+
+    private static volatile int level = Level.DEBUG.ordinal();
+    private static volatile int categories = ~0;
+
+    private static Thread dumper = null;
+
+    /**
+     * private constructor, only instantiated once to be published.
+     */
+    private Trace(){};
+
+    public static void registerMBean()
+    {
+        Metrics.register("Trace", "trace", new Trace());
+    }
+
+    public static boolean isEnabled(Event e)
+    {
+        return e.level.ordinal() <= level && 
+            (categories & (1 << e.category.ordinal())) != 0;
+    }
+
+    /**
+     * log - records the event if its level and category are enabled.
+     */
+    public static void log(Event e, long a, long b)
+    {
+        if (!isEnabled(e))
+            return;
+
+        long seq = cursor.getAndIncrement();
+        int base = (int) (seq & (CAPACITY - 1))*SLOT;
+        ring.lazySet(base, -1);
+        ring.lazySet(base + 1, Clock.currentTimeMillis());
+        ring.lazySet(base + 2, e.ordinal());
+        ring.lazySet(base + 3, a);
+        ring.lazySet(base + 4, b);
+        ring.set(base, seq);
+    }
+
+    /**
+     * symbol - the id of a string (peerID, IP address...) to be given as an 
+     * argument of log(). Ids are allocated once per distinct string.
+     */
+    public static long symbol(String s)
+    {
+        Integer id = symbols.get(s);
+        if (id != null)
+            return id;
+
+        synchronized (symbolNames)
+        {
+            id = symbols.get(s);
+            if (id != null)
+                return id;
+            if (symbolNames.size() == MAX_SYMBOLS)
+                return -1;
+
+            id = symbolNames.size();
+            symbolNames.add(s);
+            symbols.put(s, id);
+            return id;
+        }
+    }
+
+    private static String symbol(long id)
+    {
+        synchronized (symbolNames)
+        {
+            if (id < 0 || id >= symbolNames.size())
+                return "?";
+            return symbolNames.get((int) id);
+        }
+    }
+
+    /**
+     * read - formats the record of sequence seq.
+     * @return null if it was overwritten meanwhile.
+     */
+    private static String read(long seq)
+    {
+        int base = (int) (seq & (CAPACITY - 1))*SLOT;
+        if (ring.get(base) != seq)
+            return null;
+
+        long time  = ring.get(base + 1);
+        int  event = (int) ring.get(base + 2);
+        long a     = ring.get(base + 3);
+        long b     = ring.get(base + 4);
+
+        if (ring.get(base) != seq)
+            return null;
+
+        Event e = Event.values()[event];
+        return time + " " + e.tag + e.format.format(a, b);
+    }
+
+    /**
+     * snapshot - the records still in the ring buffer, oldest first.
+     */
+    public static List<String> snapshot()
+    {
+        ArrayList<String> res = new ArrayList<String>();
+        long end = cursor.get();
+        for (long seq = Math.max(0, end - CAPACITY); seq < end; seq++)
+        {
+            String record = read(seq);
+            if (record != null)
+                res.add(record);
+        }
+        return res;
+    }
+
+    /**
+     * startDumper - starts a thread printing the new records every 
+     * periodMillis.
+     */
+    public static synchronized void startDumper(PrintStream out, 
+                                                long periodMillis)
+    {
+        if (dumper != null)
+            return;
+
+        dumper = new Thread(() ->
+        {
+            long next = cursor.get();
+            while (!Thread.interrupted())
+            {
+                try
+                {
+                    Thread.sleep(periodMillis);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                long end = cursor.get();
+                if (end - next > CAPACITY)
+                {
+                    out.println("Trace         - " + (end - next - CAPACITY) +
+                        " records lost");
+                    next = end - CAPACITY;
+                }
+                for (; next < end; next++)
+                {
+                    String record = read(next);
+                    if (record != null)
+                        out.println(record);
+                }
+            }
+        }, "TraceDumper");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    public static void setLevel(Level l)
+    {
+        level = l.ordinal();
+    }
+
+    public static void enable(Category c, boolean enabled)
+    {
+        if (enabled)
+            categories |= 1 << c.ordinal();
+        else
+            categories &= ~(1 << c.ordinal());
+    }
+
+    public String getLevel()
+    {
+        return Level.values()[level].toString();
+    }
+
+    public void setLevel(String l)
+    {
+        setLevel(Level.valueOf(l));
+    }
+
+    public String getCategories()
+    {
+        String res = "";
+        for (Category c : Category.values())
+        {
+            if ((categories & (1 << c.ordinal())) != 0)
+                res += (res.isEmpty() ? "" : ",") + c;
+        }
+        return res;
+    }
+
+    public void setCategories(String list)
+    {
+        int res = 0;
+        for (String c : list.split(","))
+        {
+            if (!c.trim().isEmpty())
+                res |= 1 << Category.valueOf(c.trim()).ordinal();
+        }
+        categories = res;
+    }
+
+    public long getRecorded()
+    {
+        return cursor.get();
+    }
+
+    public String[] dump()
+    {
+        return snapshot().toArray(new String[0]);
+    }
+}
\ No newline at end of file
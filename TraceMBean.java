@@ -0,0 +1,13 @@
+/**
+ * JMX view of Trace: level and categories can be changed at runtime, and
+ * dump() returns the records still in the ring buffer.
+ */
+public interface TraceMBean
+{
+    public String getLevel();
+    public void setLevel(String level);
+    public String getCategories();
+    public void setCategories(String categories);
+    public long getRecorded();
+    public String[] dump();
+}
\ No newline at end of file
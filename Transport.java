@@ -0,0 +1,37 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport is what MuxDemuxSimple uses to broadcast and receive datagrams. 
+ * The application uses a UdpTransport (a broadcast DatagramSocket on port 
+ * 4242) while the simulator of bench/ plugs in a simulated medium, so that 
+ * many nodes can run inside the same JVM.
+ */
+public interface Transport
+{
+    /**
+     * send - broadcasts the content of dp to the local link.
+     */
+    public void send(DatagramPacket dp) throws IOException;
+
+    /**
+     * send - broadcasts a single datagram made of the concatenation of the
+     * buffers (gathering write, no copy into an intermediate buffer).
+     */
+    public void send(ByteBuffer[] buffers) throws IOException;
+
+    /**
+     * receive - blocks until a datagram is received, then fills dp with its
+     * content and the address of its sender (as DatagramSocket.receive).
+     */
+    public void receive(DatagramPacket dp) throws IOException;
+
+    /**
+     * receiveNow - same as receive, but never blocks.
+     * @return false if no datagram was pending (dp is then left untouched).
+     */
+    public boolean receiveNow(DatagramPacket dp) throws IOException;
+
+    public void close();
+}
\ No newline at end of file
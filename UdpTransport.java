@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * The real Transport: a broadcast DatagramChannel.
+ *
+ * The receiving channel is non-blocking so that MuxDemuxSimple can drain all
+ * the pending datagrams (receiveNow) after each wakeup; receive() waits on a 
+ * Selector when nothing is pending. Sending goes through separate, blocking
+ * channels: a non-blocking send silently drops the datagram when the socket
+ * send buffer is full (e.g. during a LIST burst), while a blocking one waits
+ * for room.
+ */
+public class UdpTransport implements Transport
+{
+    private final DatagramChannel myChannel;
+    private final Selector mySelector;
+    private final int myPort;
+
+    /**
+     * The channel of send(DatagramPacket).
+     */
+    private final DatagramChannel mySendChannel;
+
+    /**
+     * Gathering writes need a connected channel: this one is connected to
+     * the broadcast address (the receiving channel can't be, it would then 
+     * only receive from the broadcast address). Opened on first use.
+     */
+    private DatagramChannel myBroadcastChannel = null;
+
+    private UdpTransport(DatagramChannel channel, int port) throws IOException
+    {
+        this.myChannel  = channel;
+        this.myPort     = port;
+        this.mySelector = Selector.open();
+        this.myChannel.configureBlocking(false);
+        this.myChannel.register(this.mySelector, SelectionKey.OP_READ);
+        this.mySendChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        this.mySendChannel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+    }
+
+    /**
+     * open - a broadcast channel bound to the given port.
+     */
+    public static Transport open(int port) throws IOException
+    {
+        DatagramChannel channel = 
+            DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        channel.bind(new InetSocketAddress(port));
+        return new UdpTransport(channel, port);
+    }
+
+    public void send(DatagramPacket dp) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(dp.getData(), dp.getOffset(), 
+            dp.getLength());
+        this.mySendChannel.send(buf, dp.getSocketAddress());
+    }
+
+    public void send(ByteBuffer[] buffers) throws IOException
+    {
+        if (this.myBroadcastChannel == null)
+        {
+            this.myBroadcastChannel = 
+                DatagramChannel.open(StandardProtocolFamily.INET);
+            this.myBroadcastChannel.setOption(
+                StandardSocketOptions.SO_BROADCAST, true);
+            this.myBroadcastChannel.connect(
+                new InetSocketAddress("255.255.255.255", this.myPort));
+        }
+        this.myBroadcastChannel.write(buffers);
+    }
+
+    public void receive(DatagramPacket dp) throws IOException
+    {
+        while (!this.receiveNow(dp))
+        {
+            this.mySelector.select();
+            this.mySelector.selectedKeys().clear();
+            if (Thread.interrupted())
+                throw new InterruptedIOException();
+        }
+    }
+
+    public boolean receiveNow(DatagramPacket dp) throws IOException
+    {
+        byte[] data = dp.getData();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        InetSocketAddress source = 
+            (InetSocketAddress) this.myChannel.receive(buf);
+        if (source == null)
+            return false;
+
+        dp.setData(data, 0, buf.position());
+        dp.setSocketAddress(source);
+        return true;
+    }
+
+    public void close()
+    {
+        try
+        {
+            this.mySelector.close();
+            this.myChannel.close();
+            this.mySendChannel.close();
+            if (this.myBroadcastChannel != null)
+                this.myBroadcastChannel.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Bench is a minimal JMH-like harness for the benchmarks of this directory 
+ * (CodecBench, QueueBench, PeerTableBench).
+ *
+ * Each benchmark is calibrated during the warmup iterations so that one 
+ * iteration lasts about ITERATION_MS, then measured over MEASURE iterations
+ * and reported as the mean time per operation with its standard deviation.
+ *
+ * Usage (from the root of the repository):
+ *      javac -encoding UTF-8 -d out *.java bench/*.java
+ *      java -cp out Bench [filter...]
+ * Only the benchmarks whose name contains one of the filters are run.
+ * The reference results are kept in bench/baseline.txt.
+ */
+public class Bench
+{
+    private final static int WARMUP = 5;
+    private final static int MEASURE = 10;
+    private final static long ITERATION_MS = 200;
+
+    /**
+     * The body of a benchmark, called concurrently by every thread.
+     * @return a value depending on the work done, so that the JIT can't 
+     *         eliminate it.
+     */
+    public interface Op
+    {
+        public long run(int thread, long ops) throws Exception;
+    }
+
+    private static String[] filters = new String[0];
+    private static volatile long sink = 0;
+
+    /**
+     * run - runs op on the given number of threads. The number of operations
+     * of an iteration is ops for each of the countedThreads first threads 
+     * (the others only serve them, e.g. a queue consumer).
+     */
+    public static void run(String name, int threads, int countedThreads, 
+                            Op op) throws Exception
+    {
+        if (!selected(name))
+            return;
+
+        long ops = 1;
+        for (int i=0; i<WARMUP; i++)
+        {
+            long elapsed = iteration(threads, ops, op);
+            while (elapsed < ITERATION_MS*1000000/4)
+            {
+                ops *= 2;
+                elapsed = iteration(threads, ops, op);
+            }
+        }
+
+        double[] scores = new double[MEASURE];
+        for (int i=0; i<MEASURE; i++)
+            scores[i] = ((double) iteration(threads, ops, op)) / 
+                (ops*countedThreads);
+
+        double mean = 0;
+        for (double score : scores)
+            mean += score;
+        mean /= MEASURE;
+
+        double var = 0;
+        for (double score : scores)
+            var += (score - mean)*(score - mean);
+        double error = Math.sqrt(var/(MEASURE-1));
+
+        System.out.println(String.format("%-36s %7d %14.1f +- %10.1f  ns/op",
+            name, threads, mean, error));
+    }
+
+    public static void run(String name, int threads, Op op) throws Exception
+    {
+        run(name, threads, threads, op);
+    }
+
+    /**
+     * iteration - 
+     * @return the elapsed time (ns) between the start of the first thread and
+     *         the end of the last one.
+     */
+    private static long iteration(int threads, long ops, Op op) 
+        throws Exception
+    {
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        Exception[] failure = new Exception[1];
+
+        for (int t=0; t<threads; t++)
+        {
+            final int thread = t;
+            Thread worker = new Thread(() ->
+            {
+                try
+                {
+                    barrier.await();
+                    long res = op.run(thread, ops);
+                    synchronized (Bench.class)
+                    {
+                        sink += res;
+                    }
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        barrier.await();
+        long start = System.nanoTime();
+        for (Thread worker : workers)
+            worker.join();
+        long elapsed = System.nanoTime() - start;
+
+        if (failure[0] != null)
+            throw failure[0];
+        return elapsed;
+    }
+
+    private static boolean selected(String name)
+    {
+        if (filters.length == 0)
+            return true;
+        for (String filter : filters)
+        {
+            if (name.contains(filter))
+                return true;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        filters = args;
+
+        System.out.println(String.format("%-36s %7s %27s", 
+            "Benchmark", "Threads", "Score"));
+
+        CodecBench.runAll();
+        QueueBench.runAll();
+        PeerTableBench.runAll();
+
+        if (sink == 42)
+            System.out.println();
+    }
+}
\ No newline at end of file
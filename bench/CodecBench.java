@@ -0,0 +1,173 @@
+/**
+ * Parsing (Constructor1) and encoding (get...AsEncodedString) of the three
+ * kinds of message at realistic sizes.
+ */
+public class CodecBench
+{
+    /**
+     * A HELLO message listing numPeers peers with 16-character IDs.
+     */
+    private static HelloMessage hello(int numPeers)
+    {
+        HelloMessage hm = new HelloMessage("BenchSender", 42, 30);
+        for (int i=0; i<numPeers; i++)
+            hm.addPeer(String.format("BenchPeer%07d", i));
+        return hm;
+    }
+
+    /**
+     * All the LIST messages sent by SynReceiver for a database of 
+     * totalParts parts of 255 characters.
+     */
+    private static ListMessage[] listBurst(int totalParts)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<255; i++)
+            sb.append((char) ('a' + i%26));
+        String part = sb.toString();
+
+        ListMessage[] burst = new ListMessage[totalParts];
+        for (int i=0; i<totalParts; i++)
+            burst[i] = new ListMessage("BenchSender", "BenchReceiver", 42, 
+                totalParts, i, part);
+        return burst;
+    }
+
+    public static void runAll() throws Exception
+    {
+        for (int numPeers : new int[]{0, 50, 255})
+        {
+            HelloMessage hm = hello(numPeers);
+            String encoded = hm.getHelloMessageAsEncodedString();
+
+            Bench.run("hello.parse." + numPeers, 1, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                    res += new HelloMessage(encoded).getSequenceNo();
+                return res;
+            });
+
+            // what HelloReceiver gets now: a pooled view of the bytes
+            byte[] bytes = encoded.getBytes();
+            Bench.run("hello.view." + numPeers, 1, (thread, ops) ->
+            {
+                long res = 0;
+                HelloView hv = HelloView.acquire();
+                for (long i=0; i<ops; i++)
+                {
+                    hv.parse(bytes, 0, bytes.length, "127.0.0.1");
+                    res += hv.getSequenceNo();
+                    if (hv.inPeers("BenchReceiver"))
+                        res++;
+                }
+                hv.release();
+                return res;
+            });
+
+            // what the receive loop does with it: only a copy
+            Bench.run("hello.wrap." + numPeers, 1, (thread, ops) ->
+            {
+                long res = 0;
+                HelloView hv = HelloView.acquire();
+                for (long i=0; i<ops; i++)
+                {
+                    hv.wrap(bytes, 0, bytes.length, "127.0.0.1");
+                    res += hv.getSenderHash();
+                }
+                hv.release();
+                return res;
+            });
+
+            Bench.run("hello.encode." + numPeers, 1, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                    res += hm.getHelloMessageAsEncodedString().length();
+                return res;
+            });
+        }
+
+        // parsed rather than built: the other constructors require the peer
+        // in PeerTable
+        String syn = "SYN;BenchSender;BenchReceiver;42;";
+        SynMessage sm = new SynMessage(syn);
+
+        Bench.run("syn.parse", 1, (thread, ops) ->
+        {
+            long res = 0;
+            for (long i=0; i<ops; i++)
+                res += new SynMessage(syn).getSequenceNo();
+            return res;
+        });
+
+        // what the handlers add around it when JFR isn't recording 
+        // (cf. Flight.decoding)
+        Bench.run("flight.decoding", 1, (thread, ops) ->
+        {
+            long res = 0;
+            for (long i=0; i<ops; i++)
+            {
+                Flight.MessageDecoded decoding = Flight.decoding();
+                Flight.decoded(decoding, syn, true);
+                res += decoding == null ? 1 : 0;
+            }
+            return res;
+        });
+
+        Bench.run("syn.encode", 1, (thread, ops) ->
+        {
+            long res = 0;
+            for (long i=0; i<ops; i++)
+                res += sm.getSynMessageAsEncodedString().length();
+            return res;
+        });
+
+        for (int totalParts : new int[]{1, 100})
+        {
+            ListMessage[] burst = listBurst(totalParts);
+            String[] encoded = new String[totalParts];
+            for (int i=0; i<totalParts; i++)
+                encoded[i] = burst[i].getListMessageAsEncodedString();
+
+            Bench.run("list.parse.burst" + totalParts, 1, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                {
+                    for (String s : encoded)
+                        res += new ListMessage(s).getPartNo();
+                }
+                return res;
+            });
+
+            Bench.run("list.encode.burst" + totalParts, 1, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                {
+                    for (ListMessage lm : burst)
+                        res += lm.getListMessageAsEncodedString().length();
+                }
+                return res;
+            });
+
+            // what SynReceiver sends now: the parts cached by ListCache
+            String[] data = new String[totalParts];
+            for (int i=0; i<totalParts; i++)
+                data[i] = burst[i].getData();
+            ListCache cache = new ListCache("BenchSender", 42, data);
+
+            Bench.run("list.cached.burst" + totalParts, 1, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                {
+                    for (int j=0; j<totalParts; j++)
+                        res += cache.getPart(j, "BenchReceiver").length();
+                }
+                return res;
+            });
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Info and the message handlers are "static": one node per class loader. 
+ * NodeClassLoader loads its own copy of every class of the application 
+ * (child-first) so that each simulated node has its own Info, Clock, etc.
+ * The SimulatedMedium is the only class shared with the Simulator.
+ */
+public class NodeClassLoader extends ClassLoader
+{
+    public NodeClassLoader(ClassLoader parent)
+    {
+        super(parent);
+    }
+
+    private static boolean shared(String name)
+    {
+        return name.startsWith("java.") || name.startsWith("javax.") || 
+            name.startsWith("jdk.") || name.startsWith("sun.") || 
+            name.startsWith("SimulatedMedium");
+    }
+
+    protected Class<?> loadClass(String name, boolean resolve) 
+        throws ClassNotFoundException
+    {
+        if (shared(name))
+            return super.loadClass(name, resolve);
+
+        synchronized (getClassLoadingLock(name))
+        {
+            Class<?> c = findLoadedClass(name);
+            if (c == null)
+            {
+                byte[] b = this.read(name);
+                if (b == null)
+                    return super.loadClass(name, resolve);
+                c = defineClass(name, b, 0, b.length);
+            }
+            if (resolve)
+                resolveClass(c);
+            return c;
+        }
+    }
+
+    private byte[] read(String name) throws ClassNotFoundException
+    {
+        String resource = name.replace('.', '/') + ".class";
+        try (InputStream in = getParent().getResourceAsStream(resource))
+        {
+            if (in == null)
+                return null;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0)
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+/**
+ * Operations on the PeerTable of Info under concurrent access, as done by 
+ * HelloReceiver (updatePeerTable, getPeerRecord), HelloSender (getMyHello),
+ * the application (getPeerSet) and SynMessage (inPeers), with 255 peers in 
+ * the table.
+ */
+public class PeerTableBench
+{
+    private final static int PEERS = 255;
+
+    public static void runAll() throws Exception
+    {
+        HelloMessage[] hellos = new HelloMessage[PEERS];
+        String[] peerIDs = new String[PEERS];
+        for (int i=0; i<PEERS; i++)
+        {
+            peerIDs[i] = String.format("BenchPeer%07d", i);
+            // the longest helloInterval, so that no peer expires meanwhile
+            hellos[i] = new HelloMessage(peerIDs[i], 0, 255);
+            hellos[i].addPeer(Info.getMyID());
+            Info.updatePeerTable(hellos[i], "10.0.0." + i);
+        }
+
+        for (int threads : new int[]{1, 4})
+        {
+            Bench.run("info.updatePeerTable", threads, (thread, ops) ->
+            {
+                for (long i=0; i<ops; i++)
+                    Info.updatePeerTable(hellos[(int) (i % PEERS)], "10.0.0.1");
+                return ops;
+            });
+
+            Bench.run("info.getPeerRecord", threads, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                    res += Info.getPeerRecord(peerIDs[(int) (i % PEERS)])
+                        .getPeerSequenceNo();
+                return res;
+            });
+
+            Bench.run("info.getPeerSet", threads, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                    res += Info.getPeerSet().size();
+                return res;
+            });
+
+            Bench.run("info.getMyHello", threads, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                    res += Info.getMyHello().getNumPeers();
+                return res;
+            });
+
+            Bench.run("info.inPeers", threads, (thread, ops) ->
+            {
+                long res = 0;
+                for (long i=0; i<ops; i++)
+                {
+                    if (Info.inPeers(peerIDs[(int) (i % PEERS)]))
+                        res++;
+                }
+                return res;
+            });
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+
+/**
+ * SynchronizedQueue (capacity 20, as in the handlers) under contention: 
+ * 1 to 4 producers (like MuxDemuxSimple and the SYN/LIST sender threads) and 
+ * a single consumer (like a handler). Scores are per transferred message,
+ * transferred one by one (enqueue/dequeue) or by batches of 16 
+ * (enqueueAll/dequeueAll).
+ */
+public class QueueBench
+{
+    public static void runAll() throws Exception
+    {
+        for (int producers : new int[]{1, 2, 4})
+        {
+            SynchronizedQueue<String> queue = new SynchronizedQueue<>(20);
+            int threads = producers + 1;
+
+            // the consumer is the last thread, the producers are counted
+            Bench.run("queue.producers" + producers, threads, producers, 
+                (thread, ops) ->
+            {
+                long res = 0;
+                if (thread == producers)
+                {
+                    for (long i=0; i<ops*producers; i++)
+                        res += queue.dequeue().length();
+                }
+                else
+                {
+                    for (long i=0; i<ops; i++)
+                        queue.enqueue("HELLO;BenchSender;42;30;0");
+                }
+                return res;
+            });
+        }
+
+        for (int producers : new int[]{1, 2, 4})
+        {
+            SynchronizedQueue<String> queue = new SynchronizedQueue<>(20);
+            int threads = producers + 1;
+
+            Bench.run("queue.batch.producers" + producers, threads, producers,
+                (thread, ops) ->
+            {
+                long res = 0;
+                ArrayList<String> batch = new ArrayList<String>();
+                if (thread == producers)
+                {
+                    long n = 0;
+                    while (n < ops*producers)
+                    {
+                        n += queue.dequeueAll(batch, 64);
+                        for (String s : batch)
+                            res += s.length();
+                        batch.clear();
+                    }
+                }
+                else
+                {
+                    for (int i=0; i<16; i++)
+                        batch.add("HELLO;BenchSender;42;30;0");
+                    for (long i=0; i<ops; i+=16)
+                        queue.enqueueAll(batch.subList(0, 
+                            (int) Math.min(16, ops - i)));
+                }
+                return res;
+            });
+        }
+    }
+}
\ No newline at end of file
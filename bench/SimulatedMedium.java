@@ -0,0 +1,265 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SimulatedMedium is a broadcast link shared by the nodes of the Simulator:
+ * every datagram sent by a node is delivered to all the nodes (itself 
+ * included, as a real broadcast), unless it is lost.
+ *
+ * Time is virtual (the same as the one of Clock in every node): it starts at
+ * 0 and goes `speedup` times faster than the wall clock. Each delivery is 
+ * delayed by latency + a uniform jitter in [0;jitter[, so datagrams sent less
+ * than jitter apart may be reordered.
+ *
+ * Loss and delays are drawn from a hash of (seed, sender, n-th datagram of 
+ * the sender, receiver) rather than from a shared Random: the fate of a given
+ * datagram doesn't depend on the interleaving of the threads, and a run is 
+ * reproduced by giving the same seed.
+ *
+ * A node can be cut off for a while (cf. silence), as if it went out of 
+ * range: its datagrams are lost, and so are those sent to it.
+ */
+public class SimulatedMedium
+{
+    public static class Datagram implements Comparable<Datagram>
+    {
+        // public: used by the nodes, which are in other class loaders
+        public final int    sender;
+        public final byte[] data;
+        public final long   deliveryTime;
+        public final long   order;
+
+        Datagram(int sender, byte[] data, long deliveryTime, long order)
+        {
+            this.sender       = sender;
+            this.data         = data;
+            this.deliveryTime = deliveryTime;
+            this.order        = order;
+        }
+
+        public int compareTo(Datagram d)
+        {
+            if (this.deliveryTime != d.deliveryTime)
+                return Long.compare(this.deliveryTime, d.deliveryTime);
+            return Long.compare(this.order, d.order);
+        }
+    }
+
+    private final int    nodes;
+    private final double loss;
+    private final long   latency;
+    private final long   jitter;
+    private final long   seed;
+    private final double speedup;
+    private final long   originNanos;
+
+    private final PriorityQueue<Datagram>[] inboxes;
+    private final AtomicLong[] sentBy;
+    private final AtomicLongArray silencedUntil;
+    private final AtomicLong order = new AtomicLong(0);
+
+    public final LongAdder datagramsSent      = new LongAdder();
+    public final LongAdder bytesSent          = new LongAdder();
+    public final LongAdder datagramsDelivered = new LongAdder();
+    public final LongAdder bytesDelivered     = new LongAdder();
+    public final LongAdder datagramsLost      = new LongAdder();
+    public final LongAdder helloSent          = new LongAdder();
+    public final LongAdder synSent            = new LongAdder();
+    public final LongAdder listSent           = new LongAdder();
+    public final LongAdder multiSent          = new LongAdder();
+    public final LongAdder bootSent           = new LongAdder();
+    public final LongAdder snapSent           = new LongAdder();
+    public final LongAdder digestSent         = new LongAdder();
+    public final LongAdder pullSent           = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SimulatedMedium(int nodes, double loss, long latency, long jitter,
+                            long seed, double speedup)
+    {
+        this.nodes       = nodes;
+        this.loss        = loss;
+        this.latency     = latency;
+        this.jitter      = jitter;
+        this.seed        = seed;
+        this.speedup     = speedup;
+        this.originNanos = System.nanoTime();
+
+        this.inboxes = new PriorityQueue[nodes];
+        this.sentBy  = new AtomicLong[nodes];
+        this.silencedUntil = new AtomicLongArray(nodes);
+        for (int i=0; i<nodes; i++)
+        {
+            this.inboxes[i] = new PriorityQueue<Datagram>();
+            this.sentBy[i]  = new AtomicLong(0);
+        }
+    }
+
+    public long getOriginNanos()
+    {
+        return this.originNanos;
+    }
+
+    public double getSpeedup()
+    {
+        return this.speedup;
+    }
+
+    /**
+     * now - the virtual time (ms).
+     */
+    public long now()
+    {
+        return (long) ((System.nanoTime() - this.originNanos)*
+            this.speedup/1000000);
+    }
+
+    /**
+     * address - the (fake) IP address of a node: 10.x.y.z
+     */
+    public InetAddress address(int node)
+    {
+        int ip = 10 << 24 | (node + 1);
+        byte[] bytes = new byte[]{(byte) (ip >>> 24), (byte) (ip >>> 16), 
+            (byte) (ip >>> 8), (byte) ip};
+        try
+        {
+            return InetAddress.getByAddress(bytes);
+        }
+        catch (UnknownHostException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * silence - cuts node off until the virtual time until.
+     */
+    public void silence(int node, long until)
+    {
+        this.silencedUntil.set(node, until);
+    }
+
+    public void broadcast(int sender, byte[] buf, int offset, int length)
+    {
+        byte[] data = new byte[length];
+        System.arraycopy(buf, offset, data, 0, length);
+
+        long n = this.sentBy[sender].getAndIncrement();
+        long now = this.now();
+
+        this.datagramsSent.increment();
+        this.bytesSent.add(length);
+        if (length >= 5 && data[0] == 'H')
+            this.helloSent.increment();
+        else if (length >= 3 && data[0] == 'S' && data[1] == 'Y')
+            this.synSent.increment();
+        else if (length >= 4 && data[0] == 'S' && data[1] == 'N')
+            this.snapSent.increment();
+        else if (length >= 4 && data[0] == 'B')
+            this.bootSent.increment();
+        else if (length >= 6 && data[0] == 'D')
+            this.digestSent.increment();
+        else if (length >= 4 && data[0] == 'P')
+            this.pullSent.increment();
+        else if (length >= 4 && data[0] == 'L')
+            this.listSent.increment();
+        else if (length >= 5 && data[0] == 'M')
+            this.multiSent.increment();
+
+        for (int receiver=0; receiver<this.nodes; receiver++)
+        {
+            long h = mix(this.seed ^ mix(sender) ^ mix(n << 20 | receiver));
+            if (uniform(h) < this.loss || 
+                now < this.silencedUntil.get(sender) ||
+                now < this.silencedUntil.get(receiver))
+            {
+                this.datagramsLost.increment();
+                continue;
+            }
+
+            long delay = this.latency;
+            if (this.jitter > 0)
+                delay += (long) (uniform(mix(h)) * this.jitter);
+
+            Datagram d = new Datagram(sender, data, now + delay, 
+                this.order.getAndIncrement());
+            PriorityQueue<Datagram> inbox = this.inboxes[receiver];
+            synchronized (inbox)
+            {
+                inbox.add(d);
+                if (inbox.peek() == d)
+                    inbox.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * receive - blocks until the next datagram of the node is due.
+     */
+    public Datagram receive(int node) throws InterruptedException
+    {
+        PriorityQueue<Datagram> inbox = this.inboxes[node];
+        synchronized (inbox)
+        {
+            while (true)
+            {
+                Datagram d = inbox.peek();
+                if (d == null)
+                {
+                    inbox.wait();
+                    continue;
+                }
+
+                long wait = d.deliveryTime - this.now();
+                if (wait > 0)
+                {
+                    inbox.wait(Math.max(1, (long) (wait/this.speedup)));
+                    continue;
+                }
+
+                inbox.poll();
+                this.datagramsDelivered.increment();
+                this.bytesDelivered.add(d.data.length);
+                return d;
+            }
+        }
+    }
+
+    /**
+     * poll - the next datagram of the node if it is due, null otherwise.
+     */
+    public Datagram poll(int node)
+    {
+        PriorityQueue<Datagram> inbox = this.inboxes[node];
+        synchronized (inbox)
+        {
+            Datagram d = inbox.peek();
+            if (d == null || d.deliveryTime > this.now())
+                return null;
+
+            inbox.poll();
+            this.datagramsDelivered.increment();
+            this.bytesDelivered.add(d.data.length);
+            return d;
+        }
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double uniform(long h)
+    {
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,169 @@
+import java.io.File;
+
+/**
+ * SimulatedNode starts a node (as Main does) on a SimulatedMedium. It is 
+ * loaded by a NodeClassLoader and called by the Simulator through 
+ * reflection.
+ */
+public class SimulatedNode
+{
+    /**
+     * start - the node gets a database of `parts` parts at sequence# 0.
+     */
+    public static void start(SimulatedMedium medium, int node, String id, 
+                                int parts)
+    {
+        Clock.setVirtual(0, medium.getOriginNanos(), medium.getSpeedup());
+        Info.setMyID(id);
+
+        String[] data = new String[parts];
+        for (int i=0; i<parts; i++)
+            data[i] = id + "-" + i;
+        Info.updateMyDatabase(data, 0);
+
+        Info.setLazy(Integer.getInteger("lazy.window", 0) > 0);
+        Info.setTombstones(
+            Integer.getInteger("tombstone.size", Tombstones.DEFAULT_CAPACITY),
+            Tombstones.DEFAULT_GRACE);
+        String phi = System.getProperty("phi.threshold");
+        if (phi != null)
+            Info.setPhiThreshold(Double.parseDouble(phi));
+        long budget = Long.getLong("replica.budget", 0);
+        if (budget > 0)
+            Info.setReplicaBudget(budget, new File(
+                System.getProperty("java.io.tmpdir"), "replicas-" + id));
+
+        SimpleMessageHandler[] handlers = new SimpleMessageHandler[6];
+        handlers[0] = new HelloSender();
+        handlers[1] = new HelloReceiver();
+        SynReceiver synReceiver = new SynReceiver();
+        synReceiver.setCoalescingWindow(Long.getLong("syn.window", 0));
+        handlers[2] = synReceiver;
+        ListReceiver listReceiver = new ListReceiver();
+        listReceiver.setOverhearing(Boolean.getBoolean("overhear"));
+        handlers[3] = listReceiver;
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.setActive(Boolean.getBoolean("bootstrap"));
+        handlers[4] = bootstrap;
+        Gossip gossip = new Gossip();
+        gossip.setActive(Boolean.getBoolean("gossip"));
+        handlers[5] = gossip;
+
+        MuxDemuxSimple dm = new MuxDemuxSimple(handlers, 
+            new SimulatedTransport(medium, node));
+        dm.setCoalescing(Boolean.getBoolean("coalesce"));
+        dm.setAdmission(
+            Double.parseDouble(System.getProperty("admission.rate", "0")),
+            Double.parseDouble(System.getProperty("admission.burst", "2000")));
+
+        for (int i=0; i<handlers.length; i++)
+        {
+            handlers[i].setMuxDemux(dm);
+            start(handlers[i], id);
+        }
+        start(dm, id);
+    }
+
+    private static void start(Runnable r, String id)
+    {
+        Thread t = new Thread(r, id + "-" + r.getClass().getName());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * replicas - 
+     * @return how many up-to-date replicas (sequence# 0) we hold, whatever 
+     *         the peerState.
+     */
+    public static int replicas()
+    {
+        int res = 0;
+        for (String peerID : Info.getPeerSet())
+        {
+            PeerRecord peerRecord = Info.getPeerRecord(peerID);
+            if (peerRecord != null && peerRecord.getPeerSequenceNo() == 0)
+                res++;
+        }
+        return res;
+    }
+
+    /**
+     * synchronizedPeers - 
+     * @return how many peers we hold an up-to-date replica of (all the 
+     *         databases are at sequence# 0 during a simulation).
+     */
+    public static int synchronizedPeers()
+    {
+        int res = 0;
+        for (String peerID : Info.getPeerSet())
+        {
+            PeerRecord peerRecord = Info.getPeerRecord(peerID);
+            if (peerRecord != null && 
+                peerRecord.getPeerState() == PeerState.SYNCHRONIZED &&
+                peerRecord.getPeerSequenceNo() == 0)
+                res++;
+        }
+        return res;
+    }
+
+    /**
+     * peersExpired - 
+     * @return how many peers we expired so far (some perhaps heard again).
+     */
+    public static int peersExpired()
+    {
+        return (int) Metrics.peersExpired.sum();
+    }
+
+    /**
+     * intactReplicas - reads every replica (reloading the spilled ones).
+     * @return how many hold the data of their peer at sequence# 0.
+     */
+    public static int intactReplicas()
+    {
+        int res = 0;
+        for (String peerID : Info.getPeerSet())
+        {
+            PeerRecord peerRecord = Info.getPeerRecord(peerID);
+            if (peerRecord == null)
+                continue;
+
+            String[] data = peerRecord.getPeerData();
+            boolean intact = data.length > 0;
+            for (int i=0; i<data.length; i++)
+                intact &= (peerID + "-" + i).equals(data[i]);
+            if (intact)
+                res++;
+        }
+        return res;
+    }
+
+    /**
+     * windowsRead - reads the first lazy.window parts of every peer, without
+     * blocking (cf. LazyReplica.tryRead).
+     * @return how many peers the window could be read (and is right) of.
+     */
+    public static int windowsRead()
+    {
+        int window = Integer.getInteger("lazy.window", 0);
+        int res = 0;
+        for (String peerID : Info.getPeerSet())
+        {
+            PeerRecord peerRecord = Info.getPeerRecord(peerID);
+            if (peerRecord == null)
+                continue;
+
+            String[] data = peerRecord.getLazyReplica().tryRead(0, window);
+            if (data == null || data.length == 0)
+                continue;
+
+            boolean right = true;
+            for (int i=0; i<data.length; i++)
+                right &= (peerID + "-" + i).equals(data[i]);
+            if (right)
+                res++;
+        }
+        return res;
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+
+/**
+ * The Transport of a simulated node: the node number `node` of a 
+ * SimulatedMedium.
+ */
+public class SimulatedTransport implements Transport
+{
+    private final SimulatedMedium medium;
+    private final int node;
+
+    public SimulatedTransport(SimulatedMedium medium, int node)
+    {
+        this.medium = medium;
+        this.node   = node;
+    }
+
+    public void send(DatagramPacket dp) throws IOException
+    {
+        this.medium.broadcast(this.node, dp.getData(), dp.getOffset(), 
+            dp.getLength());
+    }
+
+    public void send(ByteBuffer[] buffers) throws IOException
+    {
+        int length = 0;
+        for (ByteBuffer buf : buffers)
+            length += buf.remaining();
+
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (ByteBuffer buf : buffers)
+        {
+            int n = buf.remaining();
+            buf.get(data, offset, n);
+            offset += n;
+        }
+        this.medium.broadcast(this.node, data, 0, length);
+    }
+
+    public void receive(DatagramPacket dp) throws IOException
+    {
+        SimulatedMedium.Datagram d;
+        try
+        {
+            d = this.medium.receive(this.node);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        }
+
+        this.fill(dp, d);
+    }
+
+    public boolean receiveNow(DatagramPacket dp) throws IOException
+    {
+        SimulatedMedium.Datagram d = this.medium.poll(this.node);
+        if (d == null)
+            return false;
+
+        this.fill(dp, d);
+        return true;
+    }
+
+    private void fill(DatagramPacket dp, SimulatedMedium.Datagram d)
+    {
+        byte[] buf = dp.getData();
+        int length = Math.min(d.data.length, buf.length);
+        System.arraycopy(d.data, 0, buf, 0, length);
+        dp.setData(buf, 0, length);
+        dp.setAddress(this.medium.address(d.sender));
+        dp.setPort(4242);
+    }
+
+    public void close()
+    {}
+}
\ No newline at end of file
@@ -0,0 +1,299 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+
+/**
+ * Simulator runs N nodes inside the same JVM on a SimulatedMedium and 
+ * measures how long (in virtual time) the segment takes to converge, i.e. 
+ * until every node holds an up-to-date replica of every other node.
+ *
+ * Usage (from the root of the repository):
+ *      javac -encoding UTF-8 -d out *.java bench/*.java
+ *      java -cp out Simulator [nodes=20] [loss=0.0] [latency=5] [jitter=0] 
+ *          [parts=10] [speedup=10] [seed=42] [timeout=300] [coalesce=false]
+ *          [overhear=false] [window=0] [join=0] [bootstrap=false]
+ *          [gossip=false] [budget=0] [lazy=0] [hold=0] [phi=8] [flap=0]
+ *          [tombstones=0]
+ * where latency and jitter are in ms and timeout in seconds (virtual time).
+ * With coalesce=true, the nodes pack their messages into MULTI datagrams.
+ * With overhear=true, they assemble the LIST transfers to other peers too.
+ * window is the time (ms) a SynReceiver gathers SYNs into a single transfer
+ * (0: every SYN is served on its own).
+ * With join=K, the last K nodes only start once the others have converged,
+ * and the time until they hold a replica of every other node is reported 
+ * too: with bootstrap=true, they fetch them from a neighbour (cf. Bootstrap).
+ * With gossip=true, the nodes relay the replicas they hold (cf. Gossip).
+ * With budget=N, each node keeps at most N bytes of replicas on the heap and
+ * spills the others to disk (cf. ReplicaStore): every replica is read back at
+ * the end.
+ * With lazy=W, the nodes don't replicate the databases: they only read the 
+ * first W parts of every peer (cf. LazyReplica), until all of them are read.
+ * With hold=S, the segment keeps running S more seconds once converged, and
+ * the traffic meanwhile (steady state: HELLOs only, unless peers are wrongly
+ * expired and SYNed again) is reported. phi is the threshold of the failure
+ * detectors of the nodes (cf. FailureDetector).
+ * With flap=S, the first node is then cut off for S seconds (long enough for
+ * the others to expire it, and it them), and the time and the LISTs it takes
+ * the segment to converge again are reported, as well as how long node 0 
+ * and its peers were silent when they expired each other (a few HELLO 
+ * periods of 2s, cf. FailureDetector). tombstones is how many 
+ * replicas of expired peers each node keeps (cf. Tombstones).
+ */
+public class Simulator
+{
+    public static void main(String[] args) throws Exception
+    {
+        int    nodes   = 20;
+        double loss    = 0.0;
+        long   latency = 5;
+        long   jitter  = 0;
+        int    parts   = 10;
+        double speedup = 10;
+        long   seed    = 42;
+        long   timeout = 300;
+        int    join    = 0;
+        boolean bootstrap = false;
+        long   budget  = 0;
+        int    lazy    = 0;
+        long   hold    = 0;
+        long   flap    = 0;
+
+        for (String arg : args)
+        {
+            String[] kv = arg.split("=");
+            if (kv.length != 2)
+                throw new IllegalArgumentException("should be key=value: " + arg);
+
+            switch (kv[0])
+            {
+                case "nodes":   nodes   = Integer.parseInt(kv[1]);  break;
+                case "loss":    loss    = Double.parseDouble(kv[1]); break;
+                case "latency": latency = Long.parseLong(kv[1]);    break;
+                case "jitter":  jitter  = Long.parseLong(kv[1]);    break;
+                case "parts":   parts   = Integer.parseInt(kv[1]);  break;
+                case "speedup": speedup = Double.parseDouble(kv[1]); break;
+                case "seed":    seed    = Long.parseLong(kv[1]);    break;
+                case "timeout": timeout = Long.parseLong(kv[1]);    break;
+                case "coalesce": System.setProperty("coalesce", kv[1]); break;
+                case "overhear": System.setProperty("overhear", kv[1]); break;
+                case "window":  System.setProperty("syn.window", kv[1]); break;
+                case "join":    join    = Integer.parseInt(kv[1]);  break;
+                case "gossip":  System.setProperty("gossip", kv[1]); break;
+                case "bootstrap": bootstrap = Boolean.parseBoolean(kv[1]); break;
+                case "hold":    hold    = Long.parseLong(kv[1]);    break;
+                case "phi":     System.setProperty("phi.threshold", kv[1]); break;
+                case "flap":    flap    = Long.parseLong(kv[1]);    break;
+                case "tombstones": 
+                    System.setProperty("tombstone.size", kv[1]); 
+                    break;
+                case "lazy":
+                    lazy = Integer.parseInt(kv[1]);
+                    System.setProperty("lazy.window", kv[1]);
+                    break;
+                case "budget":
+                    budget = Long.parseLong(kv[1]);
+                    System.setProperty("replica.budget", kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown: " + arg);
+            }
+        }
+
+        // the nodes print their debugging output on System.out/err
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        report.println("nodes=" + nodes + " loss=" + loss + " latency=" + 
+            latency + "ms jitter=" + jitter + "ms parts=" + parts + 
+            " speedup=" + speedup + " seed=" + seed);
+
+        // the class loaders of the nodes are prepared before the clock of
+        // the medium starts (cf. prepare)
+        ClassLoader[] loader = new ClassLoader[nodes];
+        for (int i=0; i<nodes; i++)
+            loader[i] = prepare();
+
+        SimulatedMedium medium = new SimulatedMedium(nodes, loss, latency, 
+            jitter, seed, speedup);
+
+        Class<?>[] node = new Class<?>[nodes];
+        int first = nodes - join;
+        for (int i=0; i<first; i++)
+            node[i] = start(loader[i], medium, i, parts);
+
+        long target = ((long) nodes)*(nodes - 1);
+        long converged = 0;
+        long lastReport = 0;
+        long joinTime = -1;
+        long joinedTime = -1;
+        while (medium.now() < timeout*1000)
+        {
+            Thread.sleep(Math.max(1, (long) (100/speedup)));
+
+            int started = joinTime < 0 ? first : nodes;
+            // with lazy=W, the peers read instead of replicated
+            converged = sum(node, 0, started, 
+                lazy > 0 ? "windowsRead" : "synchronizedPeers");
+
+            if (joinTime < 0 && converged == ((long) first)*(first - 1))
+            {
+                joinTime = medium.now();
+                if (join > 0)
+                    report.println(String.format(
+                        "t=%7.1fs  %d nodes converged, %d joining", 
+                        joinTime/1000.0, first, join));
+                // only the joining nodes bootstrap
+                System.setProperty("bootstrap", String.valueOf(bootstrap));
+                for (int i=first; i<nodes; i++)
+                    node[i] = start(loader[i], medium, i, parts);
+                continue;
+            }
+
+            if (joinTime >= 0 && joinedTime < 0)
+            {
+                long held = sum(node, first, nodes, "replicas");
+                if (held == ((long) join)*(nodes - 1))
+                    joinedTime = medium.now();
+            }
+
+            if (converged == target)
+                break;
+
+            if (medium.now() - lastReport >= 5000)
+            {
+                lastReport = medium.now();
+                report.println(String.format("t=%7.1fs  %d/%d replicas", 
+                    lastReport/1000.0, converged, target));
+            }
+        }
+
+        if (join > 0 && joinedTime >= 0)
+            report.println(String.format(
+                "joining nodes held every replica %.1fs after starting", 
+                (joinedTime - joinTime)/1000.0));
+        if (converged == target)
+            report.println(String.format("converged in %.1fs (virtual)", 
+                medium.now()/1000.0));
+        else
+            report.println(String.format("NOT converged after %ds: %d/%d", 
+                timeout, converged, target));
+
+        if (converged == target && hold > 0)
+        {
+            long datagrams = medium.datagramsSent.sum();
+            long syns      = medium.synSent.sum();
+            long lists     = medium.listSent.sum();
+            long expired   = sum(node, 0, nodes, "peersExpired");
+            long end = medium.now() + hold*1000;
+            while (medium.now() < end)
+                Thread.sleep(Math.max(1, (long) (100/speedup)));
+
+            report.println(String.format("held %ds: %d datagrams (SYN %d, " +
+                "LIST %d), %d peers expired, %d/%d still synchronized", hold,
+                medium.datagramsSent.sum() - datagrams, 
+                medium.synSent.sum() - syns, medium.listSent.sum() - lists,
+                sum(node, 0, nodes, "peersExpired") - expired,
+                sum(node, 0, nodes, "synchronizedPeers"), target));
+        }
+
+        if (converged == target && flap > 0)
+        {
+            long lists   = medium.listSent.sum();
+            long expired = sum(node, 0, nodes, "peersExpired");
+            long cut     = medium.now();
+            long back    = cut + flap*1000;
+            medium.silence(0, back);
+            // when the first and the last of the 2*(nodes - 1) expiries 
+            // were seen
+            long firstExpiry = -1;
+            long lastExpiry  = -1;
+            while (medium.now() < back)
+            {
+                Thread.sleep(Math.max(1, (long) (100/speedup)));
+                long expiries = sum(node, 0, nodes, "peersExpired") - expired;
+                if (firstExpiry < 0 && expiries > 0)
+                    firstExpiry = medium.now();
+                if (lastExpiry < 0 && expiries >= 2*(nodes - 1))
+                    lastExpiry = medium.now();
+            }
+            if (lastExpiry >= 0)
+                report.println(String.format("node 0 cut off: expired " +
+                    "after %.1fs to %.1fs of silence", 
+                    (firstExpiry - cut)/1000.0, (lastExpiry - cut)/1000.0));
+            else
+                report.println(String.format("node 0 cut off: NOT expired " +
+                    "by all after %ds of silence", flap));
+
+            long end = back + timeout*1000;
+            while (medium.now() < end && 
+                    sum(node, 0, nodes, "synchronizedPeers") != target)
+                Thread.sleep(Math.max(1, (long) (100/speedup)));
+
+            report.println(String.format("node 0 cut off %ds: %d peers " +
+                "expired, converged again %.1fs after it was back (LIST %d)",
+                flap, sum(node, 0, nodes, "peersExpired") - expired, 
+                (medium.now() - back)/1000.0, 
+                medium.listSent.sum() - lists));
+        }
+
+        if (budget > 0)
+        {
+            long intact = sum(node, 0, nodes, "intactReplicas");
+            report.println(String.format(
+                "replicas read back intact: %d/%d", intact, target));
+        }
+
+        report.println("datagrams sent      " + medium.datagramsSent.sum() + 
+            " (HELLO " + medium.helloSent.sum() + ", SYN " + 
+            medium.synSent.sum() + ", LIST " + medium.listSent.sum() + 
+            ", MULTI " + medium.multiSent.sum() + ", BOOT " + 
+            medium.bootSent.sum() + ", SNAP " + medium.snapSent.sum() + 
+            ", DIGEST " + medium.digestSent.sum() + ", PULL " + 
+            medium.pullSent.sum() + ")");
+        report.println("bytes sent          " + medium.bytesSent.sum());
+        report.println("datagrams delivered " + 
+            medium.datagramsDelivered.sum() + " (" + 
+            medium.bytesDelivered.sum() + " bytes)");
+        report.println("datagrams lost      " + medium.datagramsLost.sum());
+
+        System.exit(converged == target ? 0 : 1);
+    }
+
+    /**
+     * prepare - the class loader of a node, with its JFR event types (cf. 
+     * Flight) already registered: it takes tens of ms per node, which would
+     * otherwise delay the start of the nodes by seconds of virtual time.
+     */
+    private static ClassLoader prepare() throws Exception
+    {
+        ClassLoader loader = new NodeClassLoader(
+            Simulator.class.getClassLoader());
+        for (Class<?> event : loader.loadClass("Flight").getDeclaredClasses())
+            Class.forName(event.getName(), true, loader);
+        return loader;
+    }
+
+    private static Class<?> start(ClassLoader loader, SimulatedMedium medium,
+                                    int i, int parts)
+        throws Exception
+    {
+        Class<?> node = loader.loadClass("SimulatedNode");
+        node.getMethod("start", SimulatedMedium.class, int.class, 
+            String.class, int.class)
+            .invoke(null, medium, i, String.format("Node%05d", i), parts);
+        return node;
+    }
+
+    /**
+     * sum - of the results of the given method of the nodes [from, to[.
+     */
+    private static long sum(Class<?>[] node, int from, int to, String method)
+        throws Exception
+    {
+        long res = 0;
+        for (int i=from; i<to; i++)
+            res += (Integer) node[i].getMethod(method).invoke(null);
+        return res;
+    }
+}